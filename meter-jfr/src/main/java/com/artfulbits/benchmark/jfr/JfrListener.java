@@ -0,0 +1,554 @@
+package com.artfulbits.benchmark.jfr;
+
+import com.artfulbits.benchmark.Meter;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder backend of the meter. Emits JFR events for measures, steps, loops and sampled loop iterations,
+ * so meter spans are visible in one recording together with GC, locks and allocations of the JVM. Events are created
+ * only when enabled in the active recording, stack traces are not collected.
+ * <p/>
+ * Usage:
+ * <pre>
+ * meter().getConfig().CustomListener = new JfrListener();
+ * </pre>
+ */
+public final class JfrListener implements Meter.Listener {
+  /* [ CONSTANTS ] ================================================================================================ */
+
+  /**
+   * Default sampling of loop iterations: every 100th iteration is emitted.
+   */
+  public static final int DEFAULT_ITERATIONS_SAMPLING = 100;
+  /**
+   * Category of all meter events.
+   */
+  private static final String CATEGORY = "Meter";
+
+  /* [ MEMBERS ] ================================================================================================== */
+
+  /**
+   * Emit every N-th loop iteration.
+   */
+  private final int mSampling;
+  /**
+   * Events state of the measures, per thread. Each thread has own Meter instance.
+   */
+  private final ThreadLocal<Measures> mMeasures = new ThreadLocal<Measures>() {
+    @Override
+    protected Measures initialValue() {
+      return new Measures();
+    }
+  };
+
+  /* [ CONSTRUCTORS ] ============================================================================================= */
+
+  /**
+   * Create listener with default iterations sampling.
+   */
+  public JfrListener() {
+    this(DEFAULT_ITERATIONS_SAMPLING);
+  }
+
+  /**
+   * Create listener.
+   *
+   * @param sampling emit every N-th loop iteration, 1 - emit all iterations.
+   */
+  public JfrListener(final int sampling) {
+    if (sampling < 1) {
+      throw new IllegalArgumentException("Sampling should be positive: " + sampling);
+    }
+
+    mSampling = sampling;
+  }
+
+  /* [ Interface Meter.Listener ] ================================================================================= */
+
+  @Override
+  public void onStep(final int measure, final int index, final long flags, final long timestamp) {
+    final Measures measures = mMeasures.get();
+
+    if ((flags & Meter.Bits.START) == Meter.Bits.START) {
+      measures.start(measure, timestamp);
+      return;
+    }
+
+    final State state = measures.get(measure);
+    if (null != state) {
+      state.step(index, flags, timestamp, mSampling);
+    }
+  }
+
+  @Override
+  public void onIteration(final int measure, final int loop, final int iteration, final long timestamp) {
+    final State state = mMeasures.get().get(measure);
+
+    if (null != state) {
+      state.iteration(loop, iteration, mSampling);
+    }
+  }
+
+  @Override
+  public void onLog(final int measure, final int index, final String log) {
+    final State state = mMeasures.get().get(measure);
+
+    if (null != state) {
+      state.log(index, log);
+    }
+  }
+
+  @Override
+  public void onPop(final int measure) {
+    final State state = mMeasures.get().remove(measure);
+
+    if (null != state) {
+      state.pop();
+    }
+  }
+
+  /* [ NESTED DECLARATIONS ] ====================================================================================== */
+
+  /**
+   * Events state of the measures stack of one thread. Measure ids are positions in the stack.
+   */
+  private static final class Measures {
+    /**
+     * State per measure id.
+     */
+    private State[] mStates = new State[4];
+
+    /**
+     * Register started measure.
+     *
+     * @param measure id of the measure.
+     * @param timestamp start timestamp.
+     */
+    public void start(final int measure, final long timestamp) {
+      if (measure >= mStates.length) {
+        mStates = Arrays.copyOf(mStates, Math.max(measure + 1, mStates.length * 2));
+      }
+
+      // measure with the same id was not popped, close its events
+      if (null != mStates[measure]) {
+        mStates[measure].pop();
+      }
+
+      mStates[measure] = new State(measure, timestamp);
+    }
+
+    /**
+     * Get state of the measure.
+     *
+     * @param measure id of the measure.
+     * @return the state, or <code>null</code> if measure was started before listener attaching.
+     */
+    public State get(final int measure) {
+      return (measure < mStates.length) ? mStates[measure] : null;
+    }
+
+    /**
+     * Remove state of the measure.
+     *
+     * @param measure id of the measure.
+     * @return removed state, or <code>null</code> if not found.
+     */
+    public State remove(final int measure) {
+      final State state = get(measure);
+
+      if (null != state) {
+        mStates[measure] = null;
+      }
+
+      return state;
+    }
+  }
+
+  /**
+   * Open events of one measure.
+   */
+  private static final class State {
+    /**
+     * Id of the measure.
+     */
+    private final int mId;
+    /**
+     * Measure span, <code>null</code> if event is disabled.
+     */
+    private MeasureEvent mMeasure;
+    /**
+     * Step in progress, started on previous step.
+     */
+    private StepEvent mStep;
+    /**
+     * Finished step, waiting for the log message.
+     */
+    private StepEvent mPending;
+    /**
+     * Timestamp of the previous step.
+     */
+    private long mPrevious;
+    /**
+     * Active loops, innermost first.
+     */
+    private final Deque<LoopState> mLoops = new ArrayDeque<>();
+
+    /**
+     * Start events of the measure.
+     *
+     * @param id id of the measure.
+     * @param timestamp start timestamp.
+     */
+    public State(final int id, final long timestamp) {
+      mId = id;
+      mPrevious = timestamp;
+
+      if (MeasureEvent.TYPE.isEnabled()) {
+        mMeasure = new MeasureEvent();
+        mMeasure.measure = id;
+        mMeasure.begin();
+      }
+
+      mStep = newStep();
+    }
+
+    /**
+     * Step stored: finish previous step, start the next one.
+     *
+     * @param index index of the step.
+     * @param flags flags of the step.
+     * @param timestamp timestamp of the step.
+     * @param sampling iterations sampling.
+     */
+    public void step(final int index, final long flags, final long timestamp, final int sampling) {
+      commitPending();
+
+      if (null != mStep) {
+        mStep.end();
+        mStep.index = index;
+        mStep.flags = flags;
+        mStep.cost = timestamp - mPrevious;
+        mPending = mStep;
+      }
+
+      mPrevious = timestamp;
+
+      if ((flags & Meter.Bits.LOOP) == Meter.Bits.LOOP) {
+        mLoops.push(new LoopState(mId, index, sampling));
+      } else if ((flags & Meter.Bits.UNLOOP) == Meter.Bits.UNLOOP && !mLoops.isEmpty()) {
+        mLoops.pop().commit();
+      }
+
+      if ((flags & Meter.Bits.END) == Meter.Bits.END) {
+        commitMeasure();
+        mStep = null;
+      } else {
+        mStep = newStep();
+      }
+    }
+
+    /**
+     * Loop iteration stored.
+     *
+     * @param loop index of the loop step.
+     * @param iteration number of the iteration.
+     * @param sampling iterations sampling.
+     */
+    public void iteration(final int loop, final int iteration, final int sampling) {
+      final LoopState state = mLoops.peek();
+
+      if (null != state && state.Index == loop) {
+        state.iteration(iteration, sampling);
+      }
+    }
+
+    /**
+     * Assign log message.
+     *
+     * @param index index of the step.
+     * @param log the message.
+     */
+    public void log(final int index, final String log) {
+      if (0 == index && null != mMeasure) {
+        mMeasure.label = log;
+      }
+
+      for (final LoopState loop : mLoops) {
+        if (loop.Index == index && null != loop.Event) {
+          loop.Event.label = log;
+        }
+      }
+
+      if (null != mPending && mPending.index == index) {
+        mPending.label = log;
+        commitPending();
+      }
+    }
+
+    /**
+     * Measure removed from the stack: commit everything still open.
+     */
+    public void pop() {
+      commitPending();
+
+      while (!mLoops.isEmpty()) {
+        mLoops.pop().commit();
+      }
+
+      commitMeasure();
+      mStep = null;
+    }
+
+    /**
+     * Create step event if enabled.
+     *
+     * @return started event, or <code>null</code> if event is disabled.
+     */
+    private StepEvent newStep() {
+      if (!StepEvent.TYPE.isEnabled()) {
+        return null;
+      }
+
+      final StepEvent step = new StepEvent();
+      step.measure = mId;
+      step.begin();
+
+      return step;
+    }
+
+    /**
+     * Commit finished step.
+     */
+    private void commitPending() {
+      if (null != mPending) {
+        mPending.commit();
+        mPending = null;
+      }
+    }
+
+    /**
+     * Commit measure span.
+     */
+    private void commitMeasure() {
+      if (null != mMeasure) {
+        mMeasure.end();
+        mMeasure.commit();
+        mMeasure = null;
+      }
+    }
+  }
+
+  /**
+   * Open events of one loop.
+   */
+  private static final class LoopState {
+    /**
+     * Index of the loop step.
+     */
+    public final int Index;
+    /**
+     * Loop span, <code>null</code> if event is disabled.
+     */
+    public final LoopEvent Event;
+    /**
+     * Id of the measure.
+     */
+    private final int mMeasure;
+    /**
+     * Sampled iteration in progress, <code>null</code> if current iteration is not sampled.
+     */
+    private IterationEvent mIteration;
+
+    /**
+     * Start loop events.
+     *
+     * @param measure id of the measure.
+     * @param index index of the loop step.
+     * @param sampling iterations sampling.
+     */
+    public LoopState(final int measure, final int index, final int sampling) {
+      mMeasure = measure;
+      Index = index;
+
+      if (LoopEvent.TYPE.isEnabled()) {
+        Event = new LoopEvent();
+        Event.measure = measure;
+        Event.index = index;
+        Event.begin();
+      } else {
+        Event = null;
+      }
+
+      mIteration = sample(0, sampling);
+    }
+
+    /**
+     * Iteration finished: commit it if sampled, start the next sampled one.
+     *
+     * @param iteration number of the finished iteration.
+     * @param sampling iterations sampling.
+     */
+    public void iteration(final int iteration, final int sampling) {
+      if (null != mIteration) {
+        mIteration.end();
+        mIteration.commit();
+      }
+
+      if (null != Event) {
+        Event.iterations = iteration + 1;
+      }
+
+      mIteration = sample(iteration + 1, sampling);
+    }
+
+    /**
+     * Loop finished. Iteration in progress is not a real one, it is dropped.
+     */
+    public void commit() {
+      mIteration = null;
+
+      if (null != Event) {
+        Event.end();
+        Event.commit();
+      }
+    }
+
+    /**
+     * Start iteration event if iteration is sampled.
+     *
+     * @param iteration number of the iteration.
+     * @param sampling iterations sampling.
+     * @return started event, or <code>null</code>.
+     */
+    private IterationEvent sample(final int iteration, final int sampling) {
+      if (0 != iteration % sampling || !IterationEvent.TYPE.isEnabled()) {
+        return null;
+      }
+
+      final IterationEvent event = new IterationEvent();
+      event.measure = mMeasure;
+      event.loop = Index;
+      event.iteration = iteration;
+      event.begin();
+
+      return event;
+    }
+  }
+
+  /**
+   * Measure span: from start to end.
+   */
+  @Name("com.artfulbits.meter.Measure")
+  @Label("Meter Measure")
+  @Category(CATEGORY)
+  @Description("Measurement from Meter.start() to Meter.end()")
+  @StackTrace(false)
+  static final class MeasureEvent extends Event {
+    /**
+     * Type of the event.
+     */
+    static final EventType TYPE = EventType.getEventType(MeasureEvent.class);
+
+    @Label("Measure")
+    int measure;
+
+    @Label("Label")
+    String label;
+  }
+
+  /**
+   * Step span: from previous step to the step.
+   */
+  @Name("com.artfulbits.meter.Step")
+  @Label("Meter Step")
+  @Category(CATEGORY)
+  @Description("Interval between two Meter steps")
+  @StackTrace(false)
+  static final class StepEvent extends Event {
+    /**
+     * Type of the event.
+     */
+    static final EventType TYPE = EventType.getEventType(StepEvent.class);
+
+    @Label("Measure")
+    int measure;
+
+    @Label("Index")
+    int index;
+
+    @Label("Flags")
+    @Description("Combination of Meter.Bits")
+    long flags;
+
+    @Label("Label")
+    String label;
+
+    @Label("Meter Cost")
+    @Description("Step cost measured by Meter clock")
+    @Timespan(Timespan.NANOSECONDS)
+    long cost;
+  }
+
+  /**
+   * Loop span: from loop to unloop.
+   */
+  @Name("com.artfulbits.meter.Loop")
+  @Label("Meter Loop")
+  @Category(CATEGORY)
+  @Description("Loop from Meter.loop() to Meter.unloop()")
+  @StackTrace(false)
+  static final class LoopEvent extends Event {
+    /**
+     * Type of the event.
+     */
+    static final EventType TYPE = EventType.getEventType(LoopEvent.class);
+
+    @Label("Measure")
+    int measure;
+
+    @Label("Index")
+    int index;
+
+    @Label("Label")
+    String label;
+
+    @Label("Iterations")
+    int iterations;
+  }
+
+  /**
+   * Sampled loop iteration span.
+   */
+  @Name("com.artfulbits.meter.Iteration")
+  @Label("Meter Iteration")
+  @Category(CATEGORY)
+  @Description("Sampled loop iteration, ends on Meter.recap()")
+  @StackTrace(false)
+  static final class IterationEvent extends Event {
+    /**
+     * Type of the event.
+     */
+    static final EventType TYPE = EventType.getEventType(IterationEvent.class);
+
+    @Label("Measure")
+    int measure;
+
+    @Label("Loop")
+    int loop;
+
+    @Label("Iteration")
+    int iteration;
+  }
+}
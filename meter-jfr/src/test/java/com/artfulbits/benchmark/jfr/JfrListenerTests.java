@@ -0,0 +1,103 @@
+package com.artfulbits.benchmark.jfr;
+
+import com.artfulbits.benchmark.Meter;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the JFR events emission.
+ */
+public class JfrListenerTests {
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+
+  @After
+  public void tearDown() {
+    Meter.getInstance().getConfig().reset();
+  }
+
+  @Test
+  public void test_00_Events() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.getConfig().CustomListener = new JfrListener(10);
+    meter.getConfig().ShowSummary = false;
+    meter.setOutput(new Meter.Output() {
+      @Override
+      public void log(final java.util.logging.Level level, final String tag, final String msg) {
+        // no output
+      }
+    });
+
+    final File file = mFolder.newFile("meter.jfr");
+
+    try (Recording recording = new Recording()) {
+      recording.enable("com.artfulbits.meter.Measure");
+      recording.enable("com.artfulbits.meter.Step");
+      recording.enable("com.artfulbits.meter.Loop");
+      recording.enable("com.artfulbits.meter.Iteration");
+      recording.start();
+
+      meter.start("→ JFR");
+      meter.beat("first");
+      meter.loop(100, "loop");
+      for (int i = 0; i < 100; i++) {
+        meter.recap();
+      }
+      meter.unloop("loop done");
+      meter.end("← JFR");
+      meter.pop();
+
+      recording.stop();
+      recording.dump(file.toPath());
+    }
+
+    final List<RecordedEvent> steps = new ArrayList<>();
+    final List<RecordedEvent> loops = new ArrayList<>();
+    final List<RecordedEvent> measures = new ArrayList<>();
+    int iterations = 0;
+
+    for (final RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+      final String name = event.getEventType().getName();
+
+      if (name.endsWith(".Step")) {
+        steps.add(event);
+      } else if (name.endsWith(".Loop")) {
+        loops.add(event);
+      } else if (name.endsWith(".Measure")) {
+        measures.add(event);
+      } else if (name.endsWith(".Iteration")) {
+        iterations++;
+      }
+    }
+
+    assertEquals(1, measures.size());
+    assertEquals("→ JFR", measures.get(0).getString("label"));
+
+    // beat, loop, unloop, end
+    assertEquals(4, steps.size());
+    final List<String> labels = new ArrayList<>();
+    for (final RecordedEvent step : steps) {
+      labels.add(step.getString("label"));
+    }
+    assertThat(labels, containsInAnyOrder("first", "loop", "loop done", "← JFR"));
+
+    assertEquals(1, loops.size());
+    assertEquals("loop", loops.get(0).getString("label"));
+    assertEquals(100, loops.get(0).getInt("iterations"));
+
+    // every 10th iteration is sampled
+    assertEquals(10, iterations);
+  }
+}
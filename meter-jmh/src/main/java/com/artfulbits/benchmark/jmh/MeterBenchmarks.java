@@ -0,0 +1,233 @@
+package com.artfulbits.benchmark.jmh;
+
+import com.artfulbits.benchmark.Meter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the Meter public API calls under JIT. Each benchmark thread works with own meter instance, same as
+ * instrumented code does, so multi-thread variant shows contention on the shared structures (meters registry, measures
+ * ids). Variants are defined by subclasses: {@link SingleThread}, {@link MultiThread}. Parameter <code>logs</code>
+ * switches between calls with log messages and calls without them.
+ * <p/>
+ * Steps are added into open measure, measure is replaced by a new one each {@link #ROTATE} steps to keep memory
+ * bounded. Cost of the replacement is amortized and is less than 1% of the step cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public abstract class MeterBenchmarks {
+  /* [ CONSTANTS ] ================================================================================================ */
+
+  /**
+   * Quantity of steps after which measure is replaced by a new one.
+   */
+  public static final int ROTATE = 1024;
+
+  /**
+   * Output that rejects all levels, statistics are built but not formatted and not printed.
+   */
+  private static final Meter.FilteredOutput SILENT = new Meter.FilteredOutput() {
+    @Override
+    public boolean isLoggable(final java.util.logging.Level level) {
+      return false;
+    }
+
+    @Override
+    public void log(final java.util.logging.Level level, final String tag, final String msg) {
+      // no output
+    }
+  };
+
+  /* [ STATES ] =================================================================================================== */
+
+  /**
+   * Meter of the benchmark thread with open measure.
+   */
+  @State(Scope.Thread)
+  public static class Steps {
+    /**
+     * <code>true</code> - calls with log messages, otherwise <code>false</code>.
+     */
+    @Param({"false", "true"})
+    public boolean logs;
+
+    /**
+     * Meter of the thread.
+     */
+    public Meter meter;
+    /**
+     * Log message, <code>null</code> - no log message.
+     */
+    public String log;
+    /**
+     * Quantity of steps in current measure.
+     */
+    private int mSteps;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      meter = Meter.getInstance();
+      meter.setOutput(SILENT);
+      meter.getConfig().ShowSummary = false;
+      log = logs ? "step" : null;
+
+      open();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+      while (meter.isTracking()) {
+        meter.pop();
+      }
+    }
+
+    /**
+     * Open measure for the steps.
+     */
+    protected void open() {
+      meter.start(log);
+    }
+
+    /**
+     * Count added steps, replace measure when it is full.
+     *
+     * @param steps quantity of added steps.
+     */
+    public void rotate(final int steps) {
+      mSteps += steps;
+
+      if (mSteps >= ROTATE) {
+        meter.pop();
+        open();
+        mSteps = 0;
+      }
+    }
+  }
+
+  /**
+   * Meter of the benchmark thread with open endless loop. Endless loop keeps iterations in a ring buffer, so loop is
+   * never replaced.
+   */
+  @State(Scope.Thread)
+  public static class Iterations extends Steps {
+    /** {@inheritDoc} */
+    @Override
+    protected void open() {
+      super.open();
+      meter.loop(Meter.LOOP_ENDLESS, log);
+    }
+  }
+
+  /* [ BENCHMARKS ] =============================================================================================== */
+
+  @Benchmark
+  public Meter getInstance() {
+    return Meter.getInstance();
+  }
+
+  @Benchmark
+  public void beat(final Steps s) {
+    if (null == s.log) {
+      s.meter.beat();
+    } else {
+      s.meter.beat(s.log);
+    }
+
+    s.rotate(1);
+  }
+
+  @Benchmark
+  public void skip(final Steps s) {
+    if (null == s.log) {
+      s.meter.skip();
+    } else {
+      s.meter.skip(s.log);
+    }
+
+    s.rotate(1);
+  }
+
+  @Benchmark
+  public void log(final Steps s) {
+    s.meter.log("log");
+  }
+
+  @Benchmark
+  public void recap(final Iterations s) {
+    if (null == s.log) {
+      s.meter.recap();
+    } else {
+      s.meter.recap(s.log);
+    }
+  }
+
+  @Benchmark
+  public void loopUnloop(final Steps s) {
+    if (null == s.log) {
+      s.meter.loop(1);
+      s.meter.unloop();
+    } else {
+      s.meter.loop(1, s.log);
+      s.meter.unloop(s.log);
+    }
+
+    s.rotate(2);
+  }
+
+  @Benchmark
+  public void loopEndless(final Steps s) {
+    if (null == s.log) {
+      s.meter.loop();
+      s.meter.unloop();
+    } else {
+      s.meter.loop(s.log);
+      s.meter.unloop(s.log);
+    }
+
+    s.rotate(2);
+  }
+
+  @Benchmark
+  public int startPop(final Steps s) {
+    final int id = s.meter.start(s.log);
+
+    if (null == s.log) {
+      s.meter.end();
+    } else {
+      s.meter.end(s.log);
+    }
+    s.meter.pop();
+
+    return id;
+  }
+
+  @Benchmark
+  public int startFinish(final Steps s) {
+    final int id = s.meter.start(s.log);
+
+    if (null == s.log) {
+      s.meter.finish();
+    } else {
+      s.meter.finish(s.log);
+    }
+
+    return id;
+  }
+}
@@ -0,0 +1,10 @@
+package com.artfulbits.benchmark.jmh;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Meter API calls cost, four concurrent benchmark threads with own meters.
+ */
+@Threads(4)
+public class MultiThread extends MeterBenchmarks {
+}
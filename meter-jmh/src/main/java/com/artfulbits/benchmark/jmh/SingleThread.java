@@ -0,0 +1,10 @@
+package com.artfulbits.benchmark.jmh;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Meter API calls cost, one benchmark thread.
+ */
+@Threads(1)
+public class SingleThread extends MeterBenchmarks {
+}
@@ -0,0 +1,519 @@
+package com.artfulbits.benchmark.junit;
+
+import com.artfulbits.benchmark.Meter;
+
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Isolation of benchmarks in fresh child JVMs. Each fork executes one test method by {@link #main(String[])} entry
+ * point, so JIT profile of the fork is not polluted by other tests. Child ships report of the benchmark back to the
+ * parent through binary report file, its path is passed in {@link #REPORT_PROPERTY}. Child stdout/stderr are
+ * inherited and may contain anything (test output, <code>-verbose:gc</code>, <code>-Xlog</code>). Parent aggregates
+ * results of all forks and reports variance between forks.
+ * <p/>
+ * Usage:
+ * <pre>
+ * &#64;Test
+ * &#64;MeterBenchmark(iterations = 1000, forks = 5, jvmArgs = {"-Xmx256m"})
+ * public void test_00_Parse() { ... }
+ * </pre>
+ */
+public final class Forks {
+  /* [ CONSTANTS ] ================================================================================================ */
+
+  /**
+   * System property defined in child JVM, value is the fork number.
+   */
+  public static final String CHILD_PROPERTY = "meter.fork";
+  /**
+   * System property defined in child JVM, value is the path of the report file.
+   */
+  public static final String REPORT_PROPERTY = "meter.fork.report";
+  /**
+   * Report file signature.
+   */
+  private static final int MAGIC = 0x4d46524b; // "MFRK"
+
+  /* [ STATIC MEMBERS ] =========================================================================================== */
+
+  /**
+   * Report of the benchmark executed in child JVM.
+   */
+  private static Meter.Report sReport;
+  /**
+   * Interval of the child JVM exit polling, millis.
+   */
+  private static final long POLL_INTERVAL = 50;
+
+  /* [ CONSTRUCTORS ] ============================================================================================= */
+
+  /**
+   * Hidden constructor.
+   */
+  private Forks() {
+    throw new AssertionError();
+  }
+
+  /* [ STATIC METHODS ] =========================================================================================== */
+
+  /**
+   * Check is current JVM a benchmark fork.
+   *
+   * @return <code>true</code> - child JVM, otherwise <code>false</code>.
+   */
+  public static boolean isChild() {
+    return null != System.getProperty(CHILD_PROPERTY);
+  }
+
+  /**
+   * Store report of the benchmark executed in child JVM, it is sent to parent when test finishes.
+   *
+   * @param report the report.
+   */
+  public static void publish(final Meter.Report report) {
+    sReport = report;
+  }
+
+  /**
+   * Execute test method in child JVMs one by one.
+   *
+   * @param test the test class.
+   * @param method the test method name.
+   * @param forks quantity of child JVMs.
+   * @param jvmArgs additional flags of child JVMs.
+   * @param timeout limit of each child JVM execution time, millis.
+   * @return results of all forks.
+   * @throws IOException if child cannot be started or its report cannot be read.
+   * @throws InterruptedException if waiting for child is interrupted.
+   * @throws AssertionError if child failed, timed out or sent no report.
+   */
+  public static Result run(final Class<?> test, final String method, final int forks, final List<String> jvmArgs,
+                           final long timeout) throws IOException, InterruptedException {
+    final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    final List<Fork> results = new ArrayList<>(forks);
+
+    for (int i = 0; i < forks; i++) {
+      final String name = "Fork #" + i + " of " + test.getSimpleName() + "/" + method;
+      final File file = File.createTempFile("meter-fork", ".bin");
+
+      final List<String> command = new ArrayList<>();
+      command.add(java);
+      command.addAll(jvmArgs);
+      command.add("-D" + CHILD_PROPERTY + "=" + i);
+      command.add("-D" + REPORT_PROPERTY + "=" + file.getAbsolutePath());
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(Forks.class.getName());
+      command.add(test.getName());
+      command.add(method);
+
+      try {
+        final Process process = new ProcessBuilder(command).inheritIO().start();
+
+        final Integer code = waitFor(process, timeout);
+        if (null == code) {
+          throw new AssertionError(name + " timed out after " + timeout + " ms");
+        }
+
+        final Fork fork = read(file);
+        if (0 != code || null == fork) {
+          throw new AssertionError(name + " failed, exit code: " + code);
+        }
+
+        results.add(fork);
+      } finally {
+        if (!file.delete()) {
+          file.deleteOnExit();
+        }
+      }
+    }
+
+    return new Result(test.getSimpleName() + "/" + method, jvmArgs, results);
+  }
+
+  /**
+   * Wait for child JVM exit, destroy it on timeout.
+   *
+   * @param process the child JVM.
+   * @param timeout limit of the waiting, millis.
+   * @return the exit code, or <code>null</code> on timeout.
+   * @throws InterruptedException if waiting is interrupted.
+   */
+  private static Integer waitFor(final Process process, final long timeout) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeout;
+
+    while (true) {
+      try {
+        return process.exitValue();
+      } catch (final IllegalThreadStateException ignored) {
+        // still running
+      }
+
+      if (System.currentTimeMillis() >= deadline) {
+        process.destroy();
+        process.waitFor();
+
+        return null;
+      }
+
+      Thread.sleep(POLL_INTERVAL);
+    }
+  }
+
+  /**
+   * Child JVM entry point. Executes one test method and writes its benchmark report into file {@link
+   * #REPORT_PROPERTY}.
+   *
+   * @param args test class name and test method name.
+   * @throws Exception if test class cannot be loaded or report cannot be written.
+   */
+  public static void main(final String[] args) throws Exception {
+    final String path = System.getProperty(REPORT_PROPERTY);
+    if (null == path) {
+      throw new IllegalStateException("Report file is not defined by " + REPORT_PROPERTY + " property.");
+    }
+
+    final org.junit.runner.Result result = new JUnitCore().run(Request.method(Class.forName(args[0]), args[1]));
+    for (final Failure failure : result.getFailures()) {
+      System.err.println(failure.getTestHeader() + ": " + failure.getTrace());
+    }
+
+    if (result.wasSuccessful() && null != sReport) {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+      try {
+        write(out, sReport);
+      } finally {
+        out.close();
+      }
+    }
+
+    System.exit(result.wasSuccessful() ? 0 : 1);
+  }
+
+  /**
+   * Write report: steps labels, time and skip flags, then loops iterations.
+   *
+   * @param out the report stream.
+   * @param report the report.
+   * @throws IOException if report cannot be written.
+   */
+  private static void write(final DataOutputStream out, final Meter.Report report) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(report.Count);
+
+    for (int i = 0; i < report.Count; i++) {
+      final String label = report.label(i);
+
+      out.writeBoolean(null != label);
+      out.writeUTF(null == label ? "" : label);
+      out.writeLong(report.time(i));
+      out.writeBoolean(report.isSkipped(i));
+    }
+
+    final int[] loops = report.loops();
+    out.writeInt(loops.length);
+
+    for (final int loop : loops) {
+      final long[] samples = report.samples(loop);
+
+      out.writeInt(loop);
+      out.writeInt(samples.length);
+      for (final long sample : samples) {
+        out.writeLong(sample);
+      }
+    }
+  }
+
+  /**
+   * Read report of the fork from file.
+   *
+   * @param file the report file.
+   * @return the fork results, or <code>null</code> if child sent no report.
+   * @throws IOException if file cannot be read or has unknown format.
+   */
+  private static Fork read(final File file) throws IOException {
+    if (0 == file.length()) {
+      return null;
+    }
+
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      return read(in);
+    } catch (final EOFException ignored) {
+      // child failed while writing the report
+      return null;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Read report of the fork from stream.
+   *
+   * @param in the report stream.
+   * @return the fork results.
+   * @throws IOException if stream cannot be read or has unknown format.
+   */
+  private static Fork read(final DataInputStream in) throws IOException {
+    if (MAGIC != in.readInt()) {
+      throw new IOException("Unknown fork report format.");
+    }
+
+    final int count = in.readInt();
+    final String[] labels = new String[count];
+    final long[] times = new long[count];
+    final boolean[] skipped = new boolean[count];
+
+    for (int i = 0; i < count; i++) {
+      final boolean hasLabel = in.readBoolean();
+      final String label = in.readUTF();
+
+      labels[i] = hasLabel ? label : null;
+      times[i] = in.readLong();
+      skipped[i] = in.readBoolean();
+    }
+
+    final int[] loops = new int[in.readInt()];
+    final long[][] samples = new long[loops.length][];
+
+    for (int i = 0; i < loops.length; i++) {
+      loops[i] = in.readInt();
+      samples[i] = new long[in.readInt()];
+
+      for (int j = 0; j < samples[i].length; j++) {
+        samples[i][j] = in.readLong();
+      }
+    }
+
+    return new Fork(labels, times, skipped, loops, samples);
+  }
+
+  /* [ NESTED DECLARATIONS ] ====================================================================================== */
+
+  /**
+   * Benchmark results of one child JVM.
+   */
+  public static final class Fork {
+    /**
+     * Steps labels, item is <code>null</code> for step without label.
+     */
+    public final String[] Labels;
+    /**
+     * Steps time in nanos.
+     */
+    public final long[] Times;
+    /**
+     * Steps skip flags.
+     */
+    public final boolean[] Skipped;
+    /**
+     * Indexes of the loop steps.
+     */
+    public final int[] Loops;
+    /**
+     * Iterations time of loops, in parallel with {@link #Loops}.
+     */
+    public final long[][] Samples;
+
+    /**
+     * Create fork results.
+     */
+    public Fork(final String[] labels, final long[] times, final boolean[] skipped, final int[] loops,
+                final long[][] samples) {
+      Labels = labels;
+      Times = times;
+      Skipped = skipped;
+      Loops = loops;
+      Samples = samples;
+    }
+
+    /**
+     * Get median of the loop iterations time.
+     *
+     * @param step the loop step index.
+     * @return median in nanos.
+     * @throws IllegalArgumentException if step is not a loop.
+     */
+    public double median(final int step) {
+      final int position = Arrays.binarySearch(Loops, step);
+
+      if (position < 0) {
+        throw new IllegalArgumentException("Step #" + step + " is not a loop.");
+      }
+
+      final long[] sorted = Samples[position].clone();
+      Arrays.sort(sorted);
+
+      return Meter.Robust.quantile(sorted, 0.5);
+    }
+  }
+
+  /**
+   * Aggregated results of all forks of the benchmark.
+   */
+  public static final class Result {
+    /**
+     * The benchmark name.
+     */
+    public final String Name;
+    /**
+     * Flags of the child JVMs.
+     */
+    public final List<String> JvmArgs;
+    /**
+     * Results of each fork, in order of execution.
+     */
+    public final List<Fork> Forks;
+
+    /**
+     * Create aggregated results.
+     *
+     * @throws IllegalArgumentException if forks have different steps or loops layout.
+     */
+    public Result(final String name, final List<String> jvmArgs, final List<Fork> forks) {
+      for (int i = 1; i < forks.size(); i++) {
+        final Fork first = forks.get(0), fork = forks.get(i);
+
+        if (first.Times.length != fork.Times.length || !Arrays.equals(first.Loops, fork.Loops)) {
+          throw new IllegalArgumentException("Fork #" + i + " of " + name + " has " + fork.Times.length
+              + " steps and loops " + Arrays.toString(fork.Loops) + ", expected " + first.Times.length
+              + " steps and loops " + Arrays.toString(first.Loops) + ".");
+        }
+      }
+
+      Name = name;
+      JvmArgs = Collections.unmodifiableList(new ArrayList<>(jvmArgs));
+      Forks = Collections.unmodifiableList(new ArrayList<>(forks));
+    }
+
+    /**
+     * Get step time of each fork.
+     *
+     * @param step the step index.
+     * @return time in nanos, in order of forks.
+     */
+    public double[] times(final int step) {
+      final double[] values = new double[Forks.size()];
+
+      for (int i = 0; i < values.length; i++) {
+        values[i] = Forks.get(i).Times[step];
+      }
+
+      return values;
+    }
+
+    /**
+     * Get median of the loop iterations of each fork.
+     *
+     * @param step the loop step index.
+     * @return medians in nanos, in order of forks.
+     */
+    public double[] medians(final int step) {
+      final double[] values = new double[Forks.size()];
+
+      for (int i = 0; i < values.length; i++) {
+        values[i] = Forks.get(i).median(step);
+      }
+
+      return values;
+    }
+
+    /**
+     * Get mean of the values.
+     *
+     * @param values the values.
+     * @return the mean, zero for empty values.
+     */
+    public static double mean(final double[] values) {
+      double sum = 0;
+
+      for (final double value : values) {
+        sum += value;
+      }
+
+      return (0 == values.length) ? 0 : sum / values.length;
+    }
+
+    /**
+     * Get sample standard deviation of the values.
+     *
+     * @param values the values.
+     * @return the standard deviation, zero for less than two values.
+     */
+    public static double deviation(final double[] values) {
+      final double mean = mean(values);
+      double squares = 0;
+
+      for (final double value : values) {
+        squares += (value - mean) * (value - mean);
+      }
+
+      return (values.length < 2) ? 0 : Math.sqrt(squares / (values.length - 1));
+    }
+
+    /**
+     * Compose between forks variance report: mean, standard deviation, coefficient of variation and range of each
+     * measured step and of each loop iterations median.
+     *
+     * @return report lines.
+     */
+    public List<String> lines() {
+      final List<String> lines = new ArrayList<>();
+      lines.add(String.format(Locale.US, "forks: %d x %s, jvm: %s", Forks.size(), Name, JvmArgs));
+
+      if (Forks.isEmpty()) {
+        return lines;
+      }
+
+      final Fork first = Forks.get(0);
+
+      for (int i = 1; i < first.Times.length; i++) {
+        if (!first.Skipped[i]) {
+          lines.add(line("step #" + i + " '" + first.Labels[i] + "'", times(i)));
+        }
+      }
+
+      for (final int loop : first.Loops) {
+        lines.add(line("loop #" + loop + " '" + first.Labels[loop] + "' median", medians(loop)));
+      }
+
+      return lines;
+    }
+
+    /**
+     * Format statistics of the values.
+     */
+    private static String line(final String title, final double[] values) {
+      final double mean = mean(values);
+      final double deviation = deviation(values);
+      double min = Double.MAX_VALUE, max = 0;
+
+      for (final double value : values) {
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+      }
+
+      return String.format(Locale.US, "%s: mean/sd: %.3f/%.3f ms - cv: %.1f%% - min/max: %.3f/%.3f ms", title,
+          mean / Meter.Nanos.ONE_MILLIS, deviation / Meter.Nanos.ONE_MILLIS,
+          (0 == mean) ? 0 : deviation / mean * 100, min / Meter.Nanos.ONE_MILLIS, max / Meter.Nanos.ONE_MILLIS);
+    }
+  }
+}
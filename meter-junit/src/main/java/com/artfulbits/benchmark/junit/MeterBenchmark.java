@@ -0,0 +1,61 @@
+package com.artfulbits.benchmark.junit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks test method as benchmark executed by {@link MeterRule}. Test body is the measured operation: it is executed
+ * {@link #warmup()} times without measurement, then {@link #iterations()} measured iterations of {@link #batch()}
+ * calls each.
+ * <p/>
+ * Usage:
+ * <pre>
+ * &#64;Rule
+ * public MeterRule mMeter = new MeterRule();
+ *
+ * &#64;Test
+ * &#64;MeterBenchmark(warmup = 100, iterations = 1000)
+ * public void test_00_Parse() {
+ *   parser.parse(json);
+ * }
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface MeterBenchmark {
+  /**
+   * Quantity of warm up calls, excluded from the measurement.
+   */
+  int warmup() default 10;
+
+  /**
+   * Quantity of measured iterations.
+   */
+  int iterations() default 100;
+
+  /**
+   * Quantity of test body calls in one iteration. Use batches for operations shorter than the clock resolution.
+   */
+  int batch() default 1;
+
+  /**
+   * Quantity of fresh child JVMs that execute the benchmark, see {@link Forks}. Zero - benchmark is executed in the
+   * test JVM.
+   */
+  int forks() default 0;
+
+  /**
+   * Additional flags of the child JVMs, e.g. "-Xmx256m", "-XX:+UseSerialGC". Used only when {@link #forks()} is set.
+   */
+  String[] jvmArgs() default {};
+
+  /**
+   * Limit of each child JVM execution time, seconds. Fork that exceeds it is destroyed and the test fails. Used only
+   * when {@link #forks()} is set.
+   */
+  int forkTimeout() default 600;
+}
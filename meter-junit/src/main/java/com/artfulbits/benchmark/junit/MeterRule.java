@@ -0,0 +1,239 @@
+package com.artfulbits.benchmark.junit;
+
+import com.artfulbits.benchmark.Meter;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * JUnit 4 rule that executes test methods annotated by {@link MeterBenchmark} as meter benchmarks. Test body is
+ * wrapped into measure with warm up step excluded from the statistics and loop of measured iterations, statistics are
+ * printed by {@link Meter#finish(String)} into the rule output. Optional {@link Meter.Baseline} fails the test on
+ * performance regression. Test methods without annotation are executed as is. Benchmarks with {@link
+ * MeterBenchmark#forks()} are executed in child JVMs, see {@link Forks}.
+ * <p/>
+ * <b>Note:</b> statement passed to the rule by JUnit includes {@code @Before}/{@code @After} methods and inner rules,
+ * so fixtures are measured together with the test body. Run test class with {@link MeterRunner} to measure the test
+ * method only.
+ * <p/>
+ * Measure layout:
+ * <pre>
+ * → {method}
+ * warm up           - skipped, {warmup} calls
+ * iterations        - loop of {iterations} x {batch} calls
+ * ← {method}
+ * </pre>
+ */
+public class MeterRule implements TestRule {
+  /* [ CONSTANTS ] ================================================================================================ */
+
+  /**
+   * Log message of the warm up step.
+   */
+  public static final String WARM_UP = "warm up";
+  /**
+   * Log message of the measured loop.
+   */
+  public static final String ITERATIONS = "iterations";
+
+  /* [ MEMBERS ] ================================================================================================== */
+
+  /**
+   * Output of the statistics, <code>null</code> - meter default output.
+   */
+  private final Meter.Output mOutput;
+  /**
+   * Baselines store, <code>null</code> - no regression check.
+   */
+  private final Meter.Baseline mBaseline;
+  /**
+   * Report of the last executed benchmark.
+   */
+  private Meter.Report mReport;
+  /**
+   * Results of the last benchmark executed in child JVMs.
+   */
+  private Forks.Result mForks;
+  /**
+   * <code>true</code> - rule is applied to the test method invocation by {@link MeterRunner}.
+   */
+  private boolean mIsInvoker;
+
+  /* [ CONSTRUCTORS ] ============================================================================================= */
+
+  /**
+   * Create rule with meter default output and without regression check.
+   */
+  public MeterRule() {
+    this(null, null);
+  }
+
+  /**
+   * Create rule.
+   *
+   * @param output output of the statistics, <code>null</code> - meter default output.
+   * @param baseline baselines store, <code>null</code> - no regression check.
+   */
+  public MeterRule(final Meter.Output output, final Meter.Baseline baseline) {
+    mOutput = output;
+    mBaseline = baseline;
+  }
+
+  /* [ GETTER / SETTER METHODS ] ================================================================================== */
+
+  /**
+   * Get meter instance of the current thread.
+   *
+   * @return the meter.
+   */
+  public Meter getMeter() {
+    return Meter.getInstance();
+  }
+
+  /**
+   * Get report of the last executed benchmark.
+   *
+   * @return the report, <code>null</code> if no benchmark was executed.
+   */
+  public Meter.Report getReport() {
+    return mReport;
+  }
+
+  /**
+   * Get results of the last benchmark executed in child JVMs.
+   *
+   * @return the results, <code>null</code> if no benchmark was forked.
+   */
+  public Forks.Result getForks() {
+    return mForks;
+  }
+
+  /* [ IMPLEMENTATION & HELPERS ] ================================================================================= */
+
+  /** {@inheritDoc} */
+  @Override
+  public Statement apply(final Statement base, final Description description) {
+    return mIsInvoker ? base : benchmark(base, description);
+  }
+
+  /**
+   * Apply rule to the test method invocation only, rule statement becomes pass through.
+   *
+   * @param invoker the test method invocation.
+   * @param description the test description.
+   * @return the benchmark statement.
+   */
+  /* package */ Statement invoker(final Statement invoker, final Description description) {
+    mIsInvoker = true;
+
+    return benchmark(invoker, description);
+  }
+
+  /**
+   * Wrap statement into benchmark if test is annotated by {@link MeterBenchmark}.
+   *
+   * @param base the statement to measure.
+   * @param description the test description.
+   * @return the benchmark statement or base statement if test is not annotated.
+   */
+  protected Statement benchmark(final Statement base, final Description description) {
+    MeterBenchmark benchmark = description.getAnnotation(MeterBenchmark.class);
+
+    if (null == benchmark && null != description.getTestClass()) {
+      benchmark = description.getTestClass().getAnnotation(MeterBenchmark.class);
+    }
+
+    if (null == benchmark) {
+      return base;
+    }
+
+    final MeterBenchmark settings = benchmark;
+    final String name = description.getTestClass().getSimpleName() + "/" + description.getMethodName();
+
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        if (settings.forks() > 0 && !Forks.isChild()) {
+          fork(description, settings);
+        } else {
+          execute(base, settings, name);
+        }
+      }
+    };
+  }
+
+  /**
+   * Execute test body as benchmark.
+   *
+   * @param base the test body.
+   * @param settings the benchmark settings.
+   * @param name the benchmark name.
+   * @throws Throwable failure of the test body or performance regression.
+   */
+  protected void execute(final Statement base, final MeterBenchmark settings, final String name) throws Throwable {
+    if (settings.iterations() <= 0 || settings.batch() <= 0) {
+      throw new IllegalArgumentException("Iterations and batch should be positive: " + name);
+    }
+
+    final Meter meter = getMeter();
+    if (null != mOutput) {
+      meter.setOutput(mOutput);
+    }
+
+    meter.start("→ " + name);
+
+    try {
+      for (int i = 0; i < settings.warmup(); i++) {
+        base.evaluate();
+      }
+      meter.skip(WARM_UP);
+
+      meter.loop(settings.iterations(), ITERATIONS);
+      for (int i = 0; i < settings.iterations(); i++) {
+        for (int j = 0; j < settings.batch(); j++) {
+          base.evaluate();
+        }
+        meter.recap();
+      }
+      meter.unloop();
+    } catch (final Throwable ex) {
+      meter.pop();
+      throw ex;
+    }
+
+    mReport = meter.report();
+    meter.finish("← " + name);
+
+    if (Forks.isChild()) {
+      Forks.publish(mReport);
+    }
+
+    if (null != mBaseline) {
+      mBaseline.check(name, mReport, meter.getConfig());
+    }
+  }
+
+  /**
+   * Execute benchmark in child JVMs and print variance between forks.
+   *
+   * @param description the test description.
+   * @param settings the benchmark settings.
+   * @throws Exception if fork failed.
+   */
+  protected void fork(final Description description, final MeterBenchmark settings) throws Exception {
+    final Meter meter = getMeter();
+    final Meter.Output output = (null != mOutput) ? mOutput : meter.getOutput();
+
+    mForks = Forks.run(description.getTestClass(), description.getMethodName(), settings.forks(),
+        Arrays.asList(settings.jvmArgs()), TimeUnit.SECONDS.toMillis(settings.forkTimeout()));
+
+    for (final String line : mForks.lines()) {
+      output.log(Level.INFO, meter.getConfig().OutputTag, line);
+    }
+  }
+}
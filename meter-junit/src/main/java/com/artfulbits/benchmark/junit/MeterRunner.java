@@ -0,0 +1,55 @@
+package com.artfulbits.benchmark.junit;
+
+import org.junit.Rule;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.Statement;
+
+/**
+ * JUnit 4 runner that narrows {@link MeterRule} benchmarks to the test method only. Statement passed to the rule by
+ * JUnit includes {@code @Before}/{@code @After} methods and inner rules, so with plain runner fixtures are measured
+ * together with the test body. Runner applies each {@link MeterRule} of the test instance directly to the test method
+ * invocation, the rule itself passes its statement through.
+ * <p/>
+ * Usage:
+ * <pre>
+ * &#64;RunWith(MeterRunner.class)
+ * public class ParserTests {
+ *   &#64;Rule
+ *   public MeterRule mMeter = new MeterRule();
+ *   ...
+ * }
+ * </pre>
+ */
+public class MeterRunner extends BlockJUnit4ClassRunner {
+  /* [ CONSTRUCTORS ] ============================================================================================= */
+
+  /**
+   * Create runner.
+   *
+   * @param klass the test class.
+   * @throws InitializationError if test class is malformed.
+   */
+  public MeterRunner(final Class<?> klass) throws InitializationError {
+    super(klass);
+  }
+
+  /* [ IMPLEMENTATION & HELPERS ] ================================================================================= */
+
+  /** {@inheritDoc} */
+  @Override
+  protected Statement methodInvoker(final FrameworkMethod method, final Object test) {
+    Statement invoker = super.methodInvoker(method, test);
+
+    for (final MeterRule rule : getTestClass().getAnnotatedFieldValues(test, Rule.class, MeterRule.class)) {
+      invoker = rule.invoker(invoker, describeChild(method));
+    }
+
+    for (final MeterRule rule : getTestClass().getAnnotatedMethodValues(test, Rule.class, MeterRule.class)) {
+      invoker = rule.invoker(invoker, describeChild(method));
+    }
+
+    return invoker;
+  }
+}
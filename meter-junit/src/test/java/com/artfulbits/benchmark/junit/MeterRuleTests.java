@@ -0,0 +1,274 @@
+package com.artfulbits.benchmark.junit;
+
+import com.artfulbits.benchmark.Meter;
+
+import org.junit.*;
+import org.junit.rules.*;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the benchmark rule.
+ */
+public class MeterRuleTests {
+  /** Output captured by the sample benchmarks. */
+  private static final List<String> sLines = new ArrayList<>();
+  /** Quantity of sample test body calls. */
+  private static int sCalls;
+  /** Quantity of sample fixture calls. */
+  private static int sFixtures;
+  /** Rule of the last executed sample. */
+  private static MeterRule sRule;
+
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() {
+    sLines.clear();
+    sCalls = 0;
+    sFixtures = 0;
+  }
+
+  @After
+  public void tearDown() {
+    Meter.getInstance().getConfig().reset();
+  }
+
+  @Test
+  public void test_00_Benchmark() throws Exception {
+    final Result result = JUnitCore.runClasses(Benchmarks.class, Plain.class);
+    assertTrue(result.getFailures().toString(), result.wasSuccessful());
+
+    // warm up + iterations x batch, plain test executed once
+    assertThat(sCalls, is(5 + 20 * 3 + 1));
+
+    final Meter.Report report = sRule.getReport();
+    assertThat(report, notNullValue());
+    assertTrue(report.isSkipped(report.indexOf(MeterRule.WARM_UP)));
+    assertThat(report.samples(report.indexOf(MeterRule.ITERATIONS)).length, is(20));
+
+    final String output = sLines.toString();
+    assertThat(output, containsString("Benchmarks/test_00_Annotated"));
+    assertThat(output, containsString(MeterRule.ITERATIONS));
+    assertThat(output, not(containsString("Plain/")));
+    assertFalse(Meter.getInstance().isTracking());
+  }
+
+  @Test
+  public void test_01_Failure() throws Exception {
+    final Result result = JUnitCore.runClasses(Failing.class);
+
+    assertThat(result.getFailureCount(), is(1));
+    assertThat(result.getFailures().get(0).getMessage(), equalTo("broken"));
+    assertFalse(Meter.getInstance().isTracking());
+  }
+
+  @Test
+  public void test_02_Baseline() throws Exception {
+    final Meter.Baseline baseline = new Meter.Baseline(mFolder.getRoot());
+    final Meter.Output output = new Meter.Output() {
+      @Override
+      public void log(final Level level, final String tag, final String msg) {
+        // no output
+      }
+    };
+
+    sRule = new MeterRule(output, baseline);
+    final Result result = JUnitCore.runClasses(Baselined.class);
+    assertTrue(result.getFailures().toString(), result.wasSuccessful());
+
+    assertTrue(baseline.exists("Baselined/test_00_Annotated"));
+  }
+
+  @Test
+  public void test_03_Forks() throws Exception {
+    final Result result = JUnitCore.runClasses(Forked.class);
+    assertTrue(result.getFailures().toString(), result.wasSuccessful());
+
+    // test body is executed only by child JVMs
+    assertThat(sCalls, is(0));
+
+    final Forks.Result forks = sRule.getForks();
+    assertThat(forks.Forks.size(), is(2));
+    assertThat(forks.JvmArgs, contains("-Xmx64m", "-verbose:gc"));
+
+    for (final Forks.Fork fork : forks.Forks) {
+      assertThat(fork.Loops.length, is(1));
+      assertThat(fork.Samples[0].length, is(5));
+      assertThat(Arrays.asList(fork.Labels), hasItem(MeterRule.ITERATIONS));
+    }
+
+    final String output = sLines.toString();
+    assertThat(output, containsString("forks: 2 x Forked/test_00_Annotated"));
+    assertThat(output, containsString("'" + MeterRule.ITERATIONS + "' median: mean/sd: "));
+  }
+
+  @Test
+  public void test_04_Fixtures() throws Exception {
+    // plain runner: fixtures are executed with each test body call
+    Result result = JUnitCore.runClasses(Fixtures.class);
+    assertTrue(result.getFailures().toString(), result.wasSuccessful());
+    assertThat(sCalls, is(2 + 3 * 2));
+    assertThat(sFixtures, is(sCalls));
+
+    sCalls = 0;
+    sFixtures = 0;
+
+    // meter runner: fixtures are executed once, only test method is measured
+    result = JUnitCore.runClasses(RunnerFixtures.class);
+    assertTrue(result.getFailures().toString(), result.wasSuccessful());
+    assertThat(sCalls, is(2 + 3 * 2));
+    assertThat(sFixtures, is(1));
+
+    final Meter.Report report = sRule.getReport();
+    assertThat(report.samples(report.indexOf(MeterRule.ITERATIONS)).length, is(3));
+    assertThat(sLines.toString(), containsString("RunnerFixtures/test_00_Annotated"));
+  }
+
+  @Test
+  public void test_05_ForkTimeout() throws Exception {
+    final Result result = JUnitCore.runClasses(Hanging.class);
+
+    assertThat(result.getFailureCount(), is(1));
+    assertThat(result.getFailures().get(0).getMessage(), containsString("timed out after 2000 ms"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_06_ForksLayout() throws Exception {
+    final Forks.Fork first = new Forks.Fork(new String[]{"start", "loop", "end"}, new long[3], new boolean[3],
+        new int[]{1}, new long[][]{{1L}});
+    final Forks.Fork second = new Forks.Fork(new String[]{"start", "end"}, new long[2], new boolean[2],
+        new int[0], new long[0][]);
+
+    new Forks.Result("Layout/test", new ArrayList<String>(), Arrays.asList(first, second));
+  }
+
+  /* [ NESTED DECLARATIONS ] ====================================================================================== */
+
+  /** Output into captured lines. */
+  private static final Meter.Output CAPTURE = new Meter.Output() {
+    @Override
+    public void log(final Level level, final String tag, final String msg) {
+      sLines.add(msg);
+    }
+  };
+
+  /** Sample benchmarks. */
+  public static class Benchmarks {
+    @Rule
+    public MeterRule mMeter = sRule = new MeterRule(CAPTURE, null);
+
+    @Test
+    @MeterBenchmark(warmup = 5, iterations = 20, batch = 3)
+    public void test_00_Annotated() {
+      sCalls++;
+    }
+
+  }
+
+  /** Sample test without annotation. */
+  public static class Plain {
+    @Rule
+    public MeterRule mMeter = new MeterRule(CAPTURE, null);
+
+    @Test
+    public void test_00_Plain() {
+      sCalls++;
+    }
+  }
+
+  /** Sample benchmark that fails. */
+  public static class Failing {
+    @Rule
+    public MeterRule mMeter = new MeterRule(CAPTURE, null);
+
+    @Test
+    @MeterBenchmark
+    public void test_00_Annotated() {
+      if (++sCalls > 3) {
+        throw new IllegalStateException("broken");
+      }
+    }
+  }
+
+  /** Sample benchmark executed in child JVMs. */
+  public static class Forked {
+    @Rule
+    public MeterRule mMeter = sRule = new MeterRule(CAPTURE, null);
+
+    @Test
+    @MeterBenchmark(warmup = 2, iterations = 5, forks = 2, jvmArgs = {"-Xmx64m", "-verbose:gc"})
+    public void test_00_Annotated() {
+      sCalls++;
+    }
+  }
+
+  /** Sample benchmark executed in child JVM that never finishes. */
+  public static class Hanging {
+    @Rule
+    public MeterRule mMeter = new MeterRule(CAPTURE, null);
+
+    @Test
+    @MeterBenchmark(warmup = 0, iterations = 1, forks = 1, forkTimeout = 2)
+    public void test_00_Annotated() throws InterruptedException {
+      Thread.sleep(60000);
+    }
+  }
+
+  /** Sample benchmark with fixture, executed by the plain runner. */
+  public static class Fixtures {
+    @Rule
+    public MeterRule mMeter = new MeterRule(CAPTURE, null);
+
+    @Before
+    public void setUp() {
+      sFixtures++;
+    }
+
+    @Test
+    @MeterBenchmark(warmup = 2, iterations = 3, batch = 2)
+    public void test_00_Annotated() {
+      sCalls++;
+    }
+  }
+
+  /** Sample benchmark with fixture, executed by the meter runner. */
+  @RunWith(MeterRunner.class)
+  public static class RunnerFixtures {
+    @Rule
+    public MeterRule mMeter = sRule = new MeterRule(CAPTURE, null);
+
+    @Before
+    public void setUp() {
+      sFixtures++;
+    }
+
+    @Test
+    @MeterBenchmark(warmup = 2, iterations = 3, batch = 2)
+    public void test_00_Annotated() {
+      sCalls++;
+    }
+  }
+
+  /** Sample benchmark with baseline, rule is created by the test. */
+  public static class Baselined {
+    @Rule
+    public MeterRule mMeter = sRule;
+
+    @Test
+    @MeterBenchmark(warmup = 0, iterations = 10)
+    public void test_00_Annotated() {
+      sCalls++;
+    }
+  }
+}
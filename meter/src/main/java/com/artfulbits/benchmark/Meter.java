@@ -9,16 +9,33 @@ import android.text.TextUtils;
 import android.util.Log;
 import android.util.SparseArray;
 
-import java.util.ArrayDeque;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.util.Map;
+import java.util.Properties;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 
 /**
@@ -35,6 +52,35 @@ public final class Meter {
    * Flag. Tells Meter class that loop is with unknown number of iterations.
    */
   public static final int LOOP_ENDLESS = -1000;
+  /**
+   * Log message of the step that closes warm up of {@link #loopSteady(int)} loop.
+   */
+  public static final String WARM_UP = "warm up";
+  /**
+   * Outliers rule. Do not detect outliers.
+   */
+  public static final int OUTLIERS_NONE = 0;
+  /**
+   * Outliers rule. Samples outside of Tukey fences [Q1 - k * IQR, Q3 + k * IQR] are outliers.
+   */
+  public static final int OUTLIERS_TUKEY = 1;
+  /**
+   * Outliers rule. Samples with modified z-score (based on median and MAD) greater than the limit are outliers.
+   */
+  public static final int OUTLIERS_Z_SCORE = 2;
+  /**
+   * Export format. One JSON object per line.
+   */
+  public static final int EXPORT_JSON_LINES = 1;
+  /**
+   * Export format. Comma separated values with header, one record per line.
+   */
+  public static final int EXPORT_CSV = 2;
+  /**
+   * Export format. Chrome Trace Event Format JSON of all measures in stack, loads into chrome://tracing and Perfetto
+   * UI.
+   */
+  public static final int EXPORT_CHROME_TRACE = 3;
 
   /**
    * preallocate size for reduce performance impacts.
@@ -97,7 +143,12 @@ public final class Meter {
    */
   public Output getOutput() {
     if (null == mLog) {
-      mLog = new Output() {
+      mLog = new FilteredOutput() {
+        @Override
+        public boolean isLoggable(final Level level) {
+          return Level.OFF != level;
+        }
+
         @Override
         public void log(final Level level, final String tag, final String msg) {
           if (Level.OFF == level) {
@@ -142,51 +193,62 @@ public final class Meter {
   public Calibrate calibrate() {
     // DONE: measure each method execution time and store for future calculations
 
-    long point1 = timestamp(), point2;
+    final Clock clock = resolveClock();
+    long point1 = clock.now(), point2;
 
     start();
-    mCalibrate.Start = (point2 = timestamp()) - point1;
+    mCalibrate.Start = (point2 = clock.now()) - point1;
 
     beat();
-    mCalibrate.Beat = (point1 = timestamp()) - point2;
+    mCalibrate.Beat = (point1 = clock.now()) - point2;
 
     log("calibrate");
-    mCalibrate.Log = (point2 = timestamp()) - point1;
+    mCalibrate.Log = (point2 = clock.now()) - point1;
 
     skip();
-    mCalibrate.Skip = (point1 = timestamp()) - point2;
+    mCalibrate.Skip = (point1 = clock.now()) - point2;
 
     loop();
-    mCalibrate.Loop = (point2 = timestamp()) - point1;
+    mCalibrate.Loop = (point2 = clock.now()) - point1;
 
     recap();
-    mCalibrate.Recap = (point1 = timestamp()) - point2;
+    mCalibrate.Recap = (point1 = clock.now()) - point2;
 
     unloop();
-    mCalibrate.UnLoop = (point2 = timestamp()) - point1;
+    mCalibrate.UnLoop = (point2 = clock.now()) - point1;
 
     end();
-    mCalibrate.End = (point1 = timestamp()) - point2;
+    mCalibrate.End = (point1 = clock.now()) - point2;
 
     pop();
-    mCalibrate.Pop = timestamp() - point1;
+    mCalibrate.Pop = clock.now() - point1;
 
     return mCalibrate;
   }
 
   /**
-   * Method used for timestamp value extracting.
+   * Method used for timestamp value extracting. Uses the clock resolved by current measure.
    */
-  @SuppressLint("NewApi")
   private long timestamp() {
-    final boolean apiLevel = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1);
+    return mCurrent.Clock.now();
+  }
 
-    if (apiLevel && !getConfig().UseSystemNanos) {
-      // alternative:
-      return SystemClock.elapsedRealtimeNanos();
+  /**
+   * Resolve the clock source from configuration. Called once per measure, so tracking calls do not pay for API level
+   * and configuration checks.
+   *
+   * @return instance of the clock.
+   */
+  private Clock resolveClock() {
+    final Config config = getConfig();
+
+    if (null != config.CustomClock) {
+      return config.CustomClock;
     }
 
-    return System.nanoTime();
+    final boolean apiLevel = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1);
+
+    return (apiLevel && !config.UseSystemNanos) ? Clock.ELAPSED_REALTIME : Clock.SYSTEM_NANOS;
   }
 
   /**
@@ -232,7 +294,7 @@ public final class Meter {
   /**
    * Add/Include step beat interval into benchmarking report.
    */
-  private void beat() {
+  public void beat() {
     mCurrent.add(timestamp(), Bits.INCLUDE);
   }
 
@@ -252,7 +314,7 @@ public final class Meter {
    * @param log message to assign.
    */
   public void log(final String log) {
-    mCurrent.Logs.append(mCurrent.Position.get() - 1, log);
+    mCurrent.log(mCurrent.Position.get() - 1, log);
   }
 
   /**
@@ -312,11 +374,56 @@ public final class Meter {
     log(log);
   }
 
+  /**
+   * Start the loop with automatic warm up. Iterations are discarded until the loop reaches steady state: coefficient
+   * of variation of the last {@link Config#WarmUpWindow} iterations is below {@link Config#WarmUpThreshold}, or until
+   * {@link Config#WarmUpBudget} iterations are spent. Steps recorded during warm up are skipped, nested loops opened
+   * during warm up are not recorded. Warm up is closed by skipped step "warm up", after it loop records counter
+   * measured iterations. Use {@link #isIterating()} as the loop condition.
+   *
+   * @param counter quantity of measured iterations.
+   */
+  public void loopSteady(final int counter) {
+    final Config config = getConfig();
+
+    loop(counter);
+    mCurrent.ActiveLoop.trackWarmUp(new WarmUp(config.WarmUpWindow, config.WarmUpThreshold, config.WarmUpBudget));
+  }
+
+  /**
+   * Start the loop with automatic warm up and custom log message.
+   *
+   * @param counter quantity of measured iterations.
+   * @param log log message.
+   * @see #loopSteady(int)
+   */
+  public void loopSteady(final int counter, final String log) {
+    loopSteady(counter);
+    log(log);
+  }
+
+  /**
+   * Check does the active loop need more iterations: warm up is not finished or less than expected iterations are
+   * captured. Endless loops always need more iterations.
+   *
+   * @return <code>true</code> - continue iterations, otherwise <code>false</code>.
+   */
+  public boolean isIterating() {
+    final Loop loop = (null == mCurrent) ? null : mCurrent.ActiveLoop;
+
+    if (null == loop) {
+      return false;
+    }
+
+    return (null != loop.WarmUp && !loop.WarmUp.IsDone) || loop.IsEndless
+        || loop.TotalCaptured < loop.Iterations.length;
+  }
+
   /**
    * Inside the loop store one iteration time.
    */
   public void recap() {
-    mCurrent.add(timestamp(), Bits.INCLUDE | Bits.RECAP);
+    mCurrent.addIteration(timestamp());
   }
 
   /**
@@ -351,7 +458,7 @@ public final class Meter {
    */
   public void finish() {
     end();
-    stats();
+    publish();
     pop();
   }
 
@@ -362,19 +469,54 @@ public final class Meter {
    */
   public void finish(final String log) {
     end(log);
-    stats();
+    publish();
     pop();
   }
 
+  /**
+   * Print statistics of the ended measurement. With {@link Config#AsyncReporting} immutable snapshot of the measure
+   * is handed off to the background reporter together with the configuration copy.
+   */
+  private void publish() {
+    if (getConfig().AsyncReporting) {
+      Reporter.submit(report(), new Config(getConfig()), getOutput());
+    } else {
+      stats();
+    }
+  }
+
   /**
    * End benchmarking.
    */
+  @SuppressWarnings("deprecation")
   public void end() {
     mCurrent.add(timestamp(), Bits.END);
 
     if (getConfig().DoMethodsTrace) {
       Debug.stopMethodTracing();
     }
+
+    if (null != mCurrent.AllocBytes && Management.IS_ANDROID && !isTrackingAllocations(mCurrent)) {
+      Debug.stopAllocCounting();
+    }
+  }
+
+  /**
+   * Check is any other measure in the stack still tracking allocations.
+   *
+   * @param except the measure to exclude from checking.
+   * @return <code>true</code> - allocations counting is still required, otherwise <code>false</code>.
+   */
+  private boolean isTrackingAllocations(final Measure except) {
+    synchronized (mMeasures) {
+      for (final Measure m : mMeasures) {
+        if (m != except && null != m.AllocBytes) {
+          return true;
+        }
+      }
+    }
+
+    return false;
   }
 
   /**
@@ -393,6 +535,10 @@ public final class Meter {
    * Remove from measurements stack last done tracking. Method switches current Measure instance to next in stack.
    */
   public void pop() {
+    if (null != mCurrent && null != mCurrent.Listener) {
+      mCurrent.Listener.onPop(mCurrent.Id);
+    }
+
     synchronized (mMeasures) {
       mMeasures.remove(mCurrent);
       mCurrent = (mMeasures.isEmpty()) ? null : mMeasures.get(mMeasures.size() - 1);
@@ -429,52 +575,201 @@ public final class Meter {
    */
   @SuppressWarnings({"PMD.AvoidInstantiatingObjectsInLoops"})
   public void stats(final Output log) {
-    final Config config = getConfig();
-    final int totalSteps = mCurrent.Position.get();
-    final List<Step> steps = mCurrent.ReportSteps;
-    long totalSkipped = 0;
+    print(report(), getConfig(), log);
+  }
 
-    Step subStep;
-    for (int i = 0; i < totalSteps; i++) {
-      steps.add(subStep = new Step(config, mCurrent, i));
-      totalSkipped += subStep.Skipped;
-    }
+  /**
+   * Print statistics snapshot into provided output.
+   *
+   * @param report statistics snapshot.
+   * @param config output configuration.
+   * @param log instance of logger.
+   */
+  @SuppressWarnings({"PMD.AvoidInstantiatingObjectsInLoops"})
+  private static void print(final Report report, final Config config, final Output log) {
+    final int totalSteps = report.Count;
+    final long totalSkipped = report.Skipped;
+
+    // suppressed levels are not formatted at all
+    final boolean isFinest = isLoggable(log, Level.FINEST);
+    final boolean isWarning = isLoggable(log, Level.WARNING);
+    final boolean isInfo = isLoggable(log, Level.INFO);
 
     // dump all
-    for (final Step step : steps) {
-      log.log((step.IsSkipped) ? Level.WARNING : Level.FINEST, config.OutputTag, step.toString());
+    for (int i = 0; i < totalSteps && (isFinest || isWarning); i++) {
+      final boolean isSkipped = report.isSkipped(i);
+
+      if (isSkipped ? isWarning : isFinest) {
+        log.log(isSkipped ? Level.WARNING : Level.FINEST, config.OutputTag, report.row(i));
+      }
+
+      final List<String> nested = isFinest ? report.nested(i) : null;
+      if (null != nested) {
+        for (final String line : nested) {
+          log.log(Level.FINEST, config.OutputTag, line);
+        }
+      }
     }
 
+    final StringBuilder line = new StringBuilder(PREALLOCATE);
+
     // generate summary of tracking: top items by time, total time, total skipped time,
-    if (getConfig().ShowSummary) {
-      log.log(Level.FINEST, config.OutputTag, DELIMITER);
+    if (config.ShowSummary) {
+      if (isFinest) {
+        log.log(Level.FINEST, config.OutputTag, DELIMITER);
+      }
 
       // generate summary of tracking: top items by time, total time, total skipped time,
-      log.log(Level.INFO, config.OutputTag, String.format(Locale.US, "final: %.3f ms%s, steps: %d",
-          toMillis(mCurrent.total() - totalSkipped),
-          (totalSkipped > 1000) ? String.format(" (-%.3f ms)", toMillis(totalSkipped)) : "",
-          totalSteps));
-    }
+      if (isInfo) {
+        Text.millis(line.append("final: "), report.Total - totalSkipped, 0).append(" ms");
+
+        if (totalSkipped > 1000) {
+          Text.millis(line.append(" (-"), totalSkipped, 0).append(" ms)");
+        }
 
-    // create sorted list of steps for TOP-N items print
-    final PriorityQueue<Step> pq = new PriorityQueue<>(totalSteps, Step.Comparator);
-    pq.addAll(steps);
+        if (report.HasCpu) {
+          Text.millis(line.append(", cpu: "), report.Cpu, 0).append(" ms");
+        }
+
+        if (report.HasGc) {
+          Text.millis(line.append(", gc: ").append(report.GcCount).append('/'), report.GcTime, 0).append(" ms");
+        }
+
+        write(log, Level.INFO, config.OutputTag, line.append(", steps: ").append(totalSteps));
+      }
+    }
 
     // publish longest steps
     if (config.ShowTopNLongest > 0) {
+      if (isFinest) {
+        log.log(Level.FINEST, config.OutputTag, DELIMITER);
+      }
+
+      final int[] top = isInfo ? report.top() : new int[0];
+      for (int i = 0; i < top.length; i++) {
+        if (!report.isSkipped(top[i])) {
+          line.setLength(0);
+          line.append("top-").append(i + 1).append(": ").append(report.row(top[i]));
+          write(log, Level.INFO, config.OutputTag, line);
+        }
+      }
+    }
+
+    if (isFinest) {
       log.log(Level.FINEST, config.OutputTag, DELIMITER);
+    }
+  }
 
-      final int len = Math.min(pq.size(), config.ShowTopNLongest);
-      for (int i = 1; i <= len; i++) {
-        final Step step = pq.poll();
+  /**
+   * Check is the level accepted by output. Outputs without declared levels accept everything.
+   *
+   * @param log instance of logger.
+   * @param level the level of logging.
+   * @return <code>true</code> - level is accepted, otherwise <code>false</code>.
+   */
+  private static boolean isLoggable(final Output log, final Level level) {
+    return !(log instanceof FilteredOutput) || ((FilteredOutput) log).isLoggable(level);
+  }
 
-        if (null != step && !step.IsSkipped) {
-          log.log(Level.INFO, config.OutputTag, "top-" + i + ": " + step.toString());
-        }
+  /**
+   * Export steps, loops and calibration of the current measurement in machine readable format. Values are written
+   * straight from captured data, text report is not built. Should be called before {@link #pop()}. All time values
+   * are in nanoseconds.
+   * <p/>
+   * {@link #EXPORT_CHROME_TRACE} exports all measures in stack as timeline: measures and steps are slices of the
+   * measure thread, loops and iterations are nested async slices of the measure.
+   *
+   * @param out destination of the export, not closed.
+   * @param format {@link #EXPORT_JSON_LINES}, {@link #EXPORT_CSV} or {@link #EXPORT_CHROME_TRACE}.
+   * @throws IOException if writing failed.
+   */
+  public void export(final Writer out, final int format) throws IOException {
+    if (EXPORT_CHROME_TRACE == format) {
+      final List<Measure> measures;
+      synchronized (mMeasures) {
+        measures = new ArrayList<>(mMeasures);
       }
+
+      new Trace(out).measures(measures);
+      return;
+    }
+
+    final Exporter exporter = new Exporter(out, format);
+
+    exporter.measure(mCurrent);
+    exporter.calibrate(mCalibrate);
+  }
+
+  /**
+   * Export current measurement in UTF-8 encoding.
+   *
+   * @param out destination of the export, flushed but not closed.
+   * @param format {@link #EXPORT_JSON_LINES}, {@link #EXPORT_CSV} or {@link #EXPORT_CHROME_TRACE}.
+   * @throws IOException if writing failed.
+   * @see #export(Writer, int)
+   */
+  public void export(final OutputStream out, final int format) throws IOException {
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+
+    export(writer, format);
+    writer.flush();
+  }
+
+  /**
+   * Write message into output. {@link SequenceOutput} receives the buffer itself, other outputs receive a string.
+   *
+   * @param log instance of logger.
+   * @param level the level of logging.
+   * @param tag the tag.
+   * @param msg the message, reusable buffer.
+   */
+  private static void write(final Output log, final Level level, final String tag, final CharSequence msg) {
+    if (log instanceof SequenceOutput) {
+      ((SequenceOutput) log).log(level, tag, msg);
+    } else {
+      log.log(level, tag, msg.toString());
+    }
+  }
+
+  /**
+   * Get statistics snapshot of the current measurement. Snapshot is calculated once and cached, new snapshot is
+   * created only if measurement recorded new steps, iterations or log messages, or output configuration changed.
+   * Should be called before {@link #pop()}.
+   *
+   * @return immutable statistics snapshot.
+   */
+  public Report report() {
+    final Config config = getConfig();
+    final Report cached = mCurrent.CachedReport;
+
+    if (null != cached && cached.isActual(config, mCurrent)) {
+      return cached;
     }
 
-    log.log(Level.FINEST, config.OutputTag, DELIMITER);
+    return mCurrent.CachedReport = new Report(config, mCurrent);
+  }
+
+  /**
+   * Wait until background reporter prints all submitted measurements. Used only when {@link
+   * Config#AsyncReporting} is set.
+   *
+   * @param timeoutMillis maximum time to wait in milliseconds.
+   * @return <code>true</code> - all reports are printed, otherwise <code>false</code>.
+   * @throws InterruptedException if the current thread was interrupted while waiting.
+   */
+  public static boolean flush(final long timeoutMillis) throws InterruptedException {
+    return Reporter.await(timeoutMillis);
+  }
+
+  /**
+   * Get longest steps and loop iterations of the current measurement. Selection is maintained during recording, so
+   * the call does not require a statistics pass. Quantity is defined by {@link Config#ShowTopNLongest} on {@link
+   * #start(String)} call.
+   *
+   * @return snapshot of the longest steps and iterations.
+   */
+  public Longest longest() {
+    return new Longest(mCurrent.TopSteps, mCurrent.TopIterations);
   }
 
   /**
@@ -512,27 +807,15 @@ public final class Meter {
    * com.artfulbits.benchmark.Meter.Nanos#COMPARE_GREATER}, {@link com.artfulbits.benchmark.Meter.Nanos#COMPARE_LESS}.
    */
   public int compare(final int[] left, final int[] right, final long accuracy) {
-    // statistics is not calculated yet
-    if (mCurrent.ReportSteps.isEmpty()) {
-      // call for making ReportSteps collection filled
-      stats(new Output() {
-        @Override
-        public void log(Level level, String tag, String msg) {
-        /* log nothing */
-        }
-      });
-    }
-
-    Arrays.sort(left);
-    Arrays.sort(right);
+    final Report report = report();
     long leftTotal = 0, rightTotal = 0;
 
-    int counter = 0;
-    for (final Step s : mCurrent.ReportSteps) {
-      leftTotal += (Arrays.binarySearch(left, counter) < 0) ? 0 : s.Total;
-      rightTotal += (Arrays.binarySearch(right, counter) < 0) ? 0 : s.Total;
+    for (final int index : left) {
+      leftTotal += report.time(index);
+    }
 
-      counter++;
+    for (final int index : right) {
+      rightTotal += report.time(index);
     }
 
     final Long l = (leftTotal - (leftTotal % accuracy));
@@ -540,6 +823,107 @@ public final class Meter {
     return l.compareTo(r);
   }
 
+  /**
+   * Compare iterations of two loops of the current measurement with Welch's t-test. Should be called before {@link
+   * #pop()}.
+   *
+   * @param baseline index of the baseline loop (or unloop) step.
+   * @param candidate index of the candidate loop (or unloop) step.
+   * @param confidence confidence level of the interval, e.g. 0.95.
+   * @return the comparison result.
+   * @throws IllegalArgumentException if any step is not a loop.
+   */
+  public Comparison compareLoops(final int baseline, final int candidate, final double confidence) {
+    final Loop left = mCurrent.loopOf(baseline);
+    final Loop right = mCurrent.loopOf(candidate);
+
+    if (null == left || null == right) {
+      throw new IllegalArgumentException("Expected loop steps, but got: #" + baseline + ", #" + candidate);
+    }
+
+    return compare(left.samples(), right.samples(), confidence);
+  }
+
+  /**
+   * Compare two sets of samples (loop iterations or totals of repeated runs) with Welch's t-test. Samples sets can
+   * have different size and variance.
+   *
+   * @param baseline the baseline samples, at least two.
+   * @param candidate the candidate samples, at least two.
+   * @param confidence confidence level of the interval, e.g. 0.95.
+   * @return the comparison result.
+   */
+  public static Comparison compare(final long[] baseline, final long[] candidate, final double confidence) {
+    return new Comparison(baseline, candidate, confidence);
+  }
+
+  /**
+   * Get histogram of iterations time for the loop. Histograms of different loops and runs can be merged by {@link
+   * Histogram#merge(Histogram)}. Should be called before {@link #pop()}.
+   *
+   * @param step index of the loop or unloop step.
+   * @return the histogram, or <code>null</code> if step is not a loop or {@link Config#Percentiles} are disabled.
+   */
+  public Histogram histogram(final int step) {
+    final Loop loop = mCurrent.loopOf(step);
+
+    return (null == loop) ? null : loop.Histogram;
+  }
+
+  /**
+   * Get robust statistics of the loop iterations, outliers detected by {@link Config#OutliersRule}. Should be called
+   * before {@link #pop()}.
+   *
+   * @param step index of the loop or unloop step.
+   * @return the statistics, or <code>null</code> if step is not a loop.
+   */
+  public Robust robust(final int step) {
+    final Loop loop = mCurrent.loopOf(step);
+    final Config config = getConfig();
+
+    return (null == loop) ? null : new Robust(loop.samples(), config.OutliersRule, config.OutliersThreshold);
+  }
+
+  /**
+   * Get quantity of bytes allocated by the thread during the step. Requires {@link Config#TrackAllocations} enabled
+   * before the {@link #start(String)} call. Should be called before {@link #pop()}.
+   *
+   * @param step step number. Less than total number of steps.
+   * @return allocated bytes, cost of allocations tracking is excluded.
+   */
+  public long allocated(final int step) {
+    return mCurrent.allocated(step);
+  }
+
+  /**
+   * Check that step has no allocations. Designed for unit tests that guard allocation free code paths.
+   *
+   * @param step step number. Less than total number of steps.
+   * @throws AssertionError if step allocates memory.
+   */
+  public void assertNoAllocation(final int step) {
+    final long bytes = allocated(step);
+
+    if (bytes > 0) {
+      throw new AssertionError(String.format(Locale.US, "Step #%d allocated %d bytes: %s",
+          step, bytes, mCurrent.log(step)));
+    }
+  }
+
+  /**
+   * Compare current measure with the stored baseline of the benchmark. Missing baseline is created from the current
+   * measure. Tolerances are taken from the {@link Config#RegressionTolerance} and {@link
+   * Config#RegressionThreshold}. Should be called before {@link #pop()}.
+   *
+   * @param baseline the baseline store.
+   * @param benchmark the benchmark name.
+   * @throws AssertionError if measure is significantly slower than the baseline.
+   * @throws IOException if baseline cannot be read or written.
+   */
+  public void assertNoRegression(final Baseline baseline, final String benchmark) throws IOException {
+    baseline.check(benchmark, report(), getConfig());
+  }
+
   /* [ UTILITIES ] =============================================================================================== */
 
   /**
@@ -574,6 +958,17 @@ public final class Meter {
     return (point * 100.0 /* percentage scale */) / end;
   }
 
+  /**
+   * Calculate ratio of two values in percents.
+   *
+   * @param part the part value.
+   * @param whole the whole value.
+   * @return ratio in percents, zero if whole is zero.
+   */
+  public static double ratio(final long part, final long whole) {
+    return (0 == whole) ? 0 : (part * 100.0 /* percentage scale */) / whole;
+  }
+
   /**
    * Convert range [0..counter] to position in cycled array.
    *
@@ -612,6 +1007,16 @@ public final class Meter {
     return nanos / 1000.0 /* micros in 1 milli */ / 1000.0 /* nanos in 1 micro */;
   }
 
+  /**
+   * Convert nanoseconds to milliseconds, for calculated (fractional) values.
+   *
+   * @param nanos nanoseconds to convert.
+   * @return total milliseconds.
+   */
+  public static double toMillis(final double nanos) {
+    return nanos / 1000.0 /* micros in 1 milli */ / 1000.0 /* nanos in 1 micro */;
+  }
+
 	/* [ CONSTRUCTORS ] ============================================================================================ */
 
   /**
@@ -649,7 +1054,7 @@ public final class Meter {
    * all fields declared in interface by default become "public final static".
    */
   @SuppressWarnings("PMD.AvoidConstantsInterface")
-  private interface Bits {
+  public interface Bits {
     /**
      * Time stamp included into statistics.
      */
@@ -727,59 +1132,538 @@ public final class Meter {
   }
 
   /**
-   * Statistics output and Tracking behavior configuration.
+   * Output that accepts reusable character sequences. Meter passes its internal buffers, so reports are printed
+   * without intermediate strings. Sequence is valid only during the call.
    */
-  public final static class Config {
+  public interface SequenceOutput extends Output {
     /**
-     * Output tag for logs used by meter class.
+     * Log measure message with defined Level and tag.
+     *
+     * @param level the level of logging. (Mostly used for coloring the output)
+     * @param tag the tag (tag of the output)
+     * @param msg the message to display, content is valid only during the call.
      */
-    public String OutputTag;
+    void log(final Level level, final String tag, final CharSequence msg);
+  }
+
+  /**
+   * Output that declares accepted levels. Meter checks the level before formatting, so suppressed lines cost
+   * nothing.
+   */
+  public interface FilteredOutput extends Output {
     /**
-     * Default DUMP trace file name. Used only when {@link Config#DoMethodsTrace} is set to <code>true</code>. Field
-     * initialized by android default dump file name.
+     * Check is the level accepted by output.
+     *
+     * @param level the level of logging.
+     * @return <code>true</code> - messages of the level are printed, otherwise <code>false</code>.
      */
-    public String MethodsTraceFilePath = getDefaultTraceFilePath() + "dmtrace.trace";
+    boolean isLoggable(final Level level);
+  }
+
+  /**
+   * Receiver of the tracking events, for forwarding steps into external profilers. Resolved once when measure starts.
+   * Called synchronously on the measured thread right after the timestamp is stored, so implementation should be
+   * cheap.
+   */
+  public interface Listener {
     /**
-     * <code>true</code> - in addition do Android default methods tracing, otherwise <code>false</code>. {@link
-     * Config#MethodsTraceFilePath}* defines the output file name for trace info.
+     * Step stored: start, beat, skip, loop, unloop or end.
+     *
+     * @param measure id of the measure.
+     * @param index index of the step.
+     * @param flags flags of the step, combination of {@link Bits}. Loop step keeps the loop size in {@link
+     * Bits#MASK} part.
+     * @param timestamp timestamp of the step.
      */
-    public boolean DoMethodsTrace;
+    void onStep(final int measure, final int index, final long flags, final long timestamp);
+
     /**
-     * <code>true</code> - show steps grid in output, otherwise <code>false</code>.
+     * Loop iteration stored.
+     *
+     * @param measure id of the measure.
+     * @param loop index of the loop step.
+     * @param iteration number of the iteration, starting from zero.
+     * @param timestamp timestamp of the iteration end.
      */
-    public boolean ShowStepsGrid;
+    void onIteration(final int measure, final int loop, final int iteration, final long timestamp);
+
     /**
-     * <code>true</code> - show accumulated time column, otherwise <code>false</code>.
+     * Log message assigned to the step. Called after {@link #onStep(int, int, long, long)} of the same step.
+     *
+     * @param measure id of the measure.
+     * @param index index of the step.
+     * @param log the message.
      */
-    public boolean ShowAccumulatedTime;
+    void onLog(final int measure, final int index, final String log);
+
     /**
-     * <code>true</code> - show cost in percents column, otherwise <code>false</code>.
+     * Measure removed from the stack, no more events for it.
+     *
+     * @param measure id of the measure.
      */
-    public boolean ShowStepCostPercents;
+    void onPop(final int measure);
+  }
+
+  /**
+   * Source of timestamps. Resolved once when measure starts, all tracking calls of the measure use the same instance.
+   */
+  public interface Clock {
     /**
-     * <code>true</code> - show step cost time column, otherwise <code>false</code>.
+     * {@link System#nanoTime()} based clock.
      */
-    public boolean ShowStepCostTime;
+    Clock SYSTEM_NANOS = new SystemNanosClock();
     /**
-     * <code>true</code> - show log message column, otherwise <code>false</code>.
+     * {@link android.os.SystemClock#elapsedRealtimeNanos()} based clock. Requires API level 17.
      */
-    public boolean ShowLogMessage;
+    Clock ELAPSED_REALTIME = new ElapsedRealtimeClock();
     /**
-     * <code>true</code> - show after tracking summary, otherwise <code>false</code>.
+     * CPU time of the current thread.
      */
-    public boolean ShowSummary;
+    Clock THREAD_CPU = new ThreadCpuClock();
+
     /**
-     * <code>true</code> - place column starter symbol "| " on each row start, otherwise <code>false</code>.
+     * Get current timestamp.
+     *
+     * @return timestamp in nanos.
      */
-    public boolean ShowTableStart;
-    /**
-     * Show in statistics summary list of longest steps. Define the Number of steps to show.
+    long now();
+  }
+
+  /**
+   * Clock based on {@link System#nanoTime()}.
+   */
+  public final static class SystemNanosClock implements Clock {
+    /** {@inheritDoc} */
+    @Override
+    public long now() {
+      return System.nanoTime();
+    }
+  }
+
+  /**
+   * Clock based on {@link android.os.SystemClock#elapsedRealtimeNanos()}.
+   */
+  public final static class ElapsedRealtimeClock implements Clock {
+    /** {@inheritDoc} */
+    @Override
+    @SuppressLint("NewApi")
+    public long now() {
+      return SystemClock.elapsedRealtimeNanos();
+    }
+  }
+
+  /**
+   * Clock that counts CPU time of the current thread. Uses {@link Debug#threadCpuTimeNanos()} on Android and
+   * ThreadMXBean on JVM.
+   */
+  public final static class ThreadCpuClock implements Clock {
+    /** {@inheritDoc} */
+    @Override
+    public long now() {
+      return Management.IS_ANDROID ? Debug.threadCpuTimeNanos() : Management.threadCpuTime();
+    }
+  }
+
+  /**
+   * Clock controlled by the test. Each {@link #now()} call returns current value and moves the clock forward on tick.
+   */
+  public final static class FakeClock implements Clock {
+    /**
+     * Current time.
+     */
+    private long mNow;
+    /**
+     * Auto-increment applied on each {@link #now()} call.
+     */
+    private final long mTick;
+
+    /**
+     * Instantiates clock that changes only on {@link #advance(long)} call.
+     */
+    public FakeClock() {
+      this(0, 0);
+    }
+
+    /**
+     * Instantiates clock with auto-increment.
+     *
+     * @param start initial time in nanos.
+     * @param tick nanos added to the time after each {@link #now()} call.
+     */
+    public FakeClock(final long start, final long tick) {
+      mNow = start;
+      mTick = tick;
+    }
+
+    /**
+     * Move clock forward.
+     *
+     * @param nanos time to add.
+     * @return this instance.
+     */
+    public FakeClock advance(final long nanos) {
+      mNow += nanos;
+      return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long now() {
+      final long now = mNow;
+      mNow += mTick;
+      return now;
+    }
+  }
+
+  /**
+   * JVM management API. Accessed through reflection, {@code java.lang.management} is not a part of Android SDK.
+   * Reflection handles are resolved once on class loading.
+   */
+  private final static class Management {
+    /**
+     * <code>true</code> - running on Dalvik/ART, otherwise JVM.
+     */
+    public static final boolean IS_ANDROID = "Dalvik".equals(System.getProperty("java.vm.name"));
+    /**
+     * Instance of the ThreadMXBean, <code>null</code> if not available.
+     */
+    private static final Object THREADS;
+    /**
+     * ThreadMXBean.getCurrentThreadCpuTime() method.
+     */
+    private static final Method CPU_TIME;
+    /**
+     * com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long) method.
+     */
+    private static final Method ALLOCATED_BYTES;
+    /**
+     * Instances of the GarbageCollectorMXBean, <code>null</code> if not available.
+     */
+    private static final Object[] GC_BEANS;
+    /**
+     * GarbageCollectorMXBean.getCollectionCount() method.
+     */
+    private static final Method GC_COUNT;
+    /**
+     * GarbageCollectorMXBean.getCollectionTime() method.
+     */
+    private static final Method GC_TIME;
+    /**
+     * <code>true</code> - Android runtime provides GC statistics (API 23+), otherwise <code>false</code>.
+     */
+    private static final boolean HAS_RUNTIME_STATS = IS_ANDROID && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    /**
+     * Number of warm up calls. Reflection generates accessor classes after several calls, that allocations should not
+     * be visible in measurements.
+     */
+    private static final int WARM_UP = 32;
+
+    static {
+      Object threads = null;
+      Method cpuTime = null, allocated = null, gcCount = null, gcTime = null;
+      Object[] gcBeans = null;
+
+      if (!IS_ANDROID) {
+        try {
+          final Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+          threads = factory.getMethod("getThreadMXBean").invoke(null);
+          cpuTime = Class.forName("java.lang.management.ThreadMXBean").getMethod("getCurrentThreadCpuTime");
+        } catch (final Throwable ignored) {
+          threads = null;
+          cpuTime = null;
+        }
+
+        try {
+          allocated = Class.forName("com.sun.management.ThreadMXBean")
+              .getMethod("getThreadAllocatedBytes", long.class);
+        } catch (final Throwable ignored) {
+          allocated = null;
+        }
+
+        try {
+          final Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+          final Class<?> bean = Class.forName("java.lang.management.GarbageCollectorMXBean");
+          gcBeans = ((List<?>) factory.getMethod("getGarbageCollectorMXBeans").invoke(null)).toArray();
+          gcCount = bean.getMethod("getCollectionCount");
+          gcTime = bean.getMethod("getCollectionTime");
+        } catch (final Throwable ignored) {
+          gcBeans = null;
+        }
+      }
+
+      THREADS = threads;
+      CPU_TIME = cpuTime;
+      ALLOCATED_BYTES = (null == threads) ? null : allocated;
+      GC_BEANS = gcBeans;
+      GC_COUNT = gcCount;
+      GC_TIME = gcTime;
+
+      final Object[] args = allocationArgs();
+      for (int i = 0; i < WARM_UP; i++) {
+        threadCpuTime();
+        threadAllocatedBytes(args);
+        gcCount();
+        gcTime();
+      }
+    }
+
+    /**
+     * Hidden constructor.
+     */
+    private Management() {
+      // do nothing, utility class
+    }
+
+    /**
+     * Get CPU time of the current thread.
+     *
+     * @return nanos, or zero if not supported.
+     */
+    public static long threadCpuTime() {
+      try {
+        return (null == CPU_TIME) ? 0 : (Long) CPU_TIME.invoke(THREADS);
+      } catch (final Throwable ignored) {
+        return 0;
+      }
+    }
+
+    /**
+     * Is garbage collections tracking supported by runtime.
+     *
+     * @return <code>true</code> - supported, otherwise <code>false</code>.
+     */
+    public static boolean isGcSupported() {
+      return HAS_RUNTIME_STATS || null != GC_BEANS;
+    }
+
+    /**
+     * Get total number of garbage collections since the process start. On Android only blocking collections are
+     * counted.
+     *
+     * @return the collections counter, or zero if not supported.
+     */
+    public static long gcCount() {
+      return HAS_RUNTIME_STATS ? runtimeStat("art.gc.blocking-gc-count") : sum(GC_COUNT);
+    }
+
+    /**
+     * Get total time of garbage collections since the process start.
+     *
+     * @return time in nanos, or zero if not supported.
+     */
+    public static long gcTime() {
+      final long millis = HAS_RUNTIME_STATS ? runtimeStat("art.gc.blocking-gc-time") : sum(GC_TIME);
+
+      return millis * Nanos.ONE_MILLIS;
+    }
+
+    /**
+     * Sum values reported by all garbage collector beans. Undefined values (negative) are ignored.
+     *
+     * @param method the bean method to call.
+     * @return the sum, or zero if not supported.
+     */
+    private static long sum(final Method method) {
+      long total = 0;
+
+      if (null != GC_BEANS) {
+        try {
+          for (final Object bean : GC_BEANS) {
+            total += Math.max(0, (Long) method.invoke(bean));
+          }
+        } catch (final Throwable ignored) {
+          return 0;
+        }
+      }
+
+      return total;
+    }
+
+    /**
+     * Get numeric value of Android runtime statistics.
+     *
+     * @param name the statistic name.
+     * @return the value, or zero if not available.
+     */
+    @SuppressLint("NewApi")
+    private static long runtimeStat(final String name) {
+      try {
+        final String value = Debug.getRuntimeStat(name);
+        return (null == value) ? 0 : Long.parseLong(value);
+      } catch (final Throwable ignored) {
+        return 0;
+      }
+    }
+
+    /**
+     * Is allocations tracking supported by runtime.
+     *
+     * @return <code>true</code> - supported, otherwise <code>false</code>.
+     */
+    public static boolean isAllocationsSupported() {
+      return IS_ANDROID || null != ALLOCATED_BYTES;
+    }
+
+    /**
+     * Create arguments for {@link #threadAllocatedBytes(Object[])} call. Arguments are prepared once per thread, so
+     * sampling does not box the thread id on each call.
+     *
+     * @return the arguments.
+     */
+    public static Object[] allocationArgs() {
+      return new Object[]{Thread.currentThread().getId()};
+    }
+
+    /**
+     * Get quantity of bytes allocated by the current thread. On Android counting should be enabled by {@link
+     * Debug#startAllocCounting()}.
+     *
+     * @param args arguments created by {@link #allocationArgs()} on the current thread.
+     * @return allocated bytes, or zero if not supported.
+     */
+    @SuppressWarnings("deprecation")
+    public static long threadAllocatedBytes(final Object[] args) {
+      if (IS_ANDROID) {
+        return Debug.getThreadAllocSize();
+      }
+
+      try {
+        return (null == ALLOCATED_BYTES) ? 0 : (Long) ALLOCATED_BYTES.invoke(THREADS, args);
+      } catch (final Throwable ignored) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Statistics output and Tracking behavior configuration.
+   */
+  public final static class Config {
+    /**
+     * Output tag for logs used by meter class.
+     */
+    public String OutputTag;
+    /**
+     * Default DUMP trace file name. Used only when {@link Config#DoMethodsTrace} is set to <code>true</code>. Field
+     * initialized by android default dump file name.
+     */
+    public String MethodsTraceFilePath = getDefaultTraceFilePath() + "dmtrace.trace";
+    /**
+     * <code>true</code> - in addition do Android default methods tracing, otherwise <code>false</code>. {@link
+     * Config#MethodsTraceFilePath}* defines the output file name for trace info.
+     */
+    public boolean DoMethodsTrace;
+    /**
+     * <code>true</code> - show steps grid in output, otherwise <code>false</code>.
+     */
+    public boolean ShowStepsGrid;
+    /**
+     * <code>true</code> - show accumulated time column, otherwise <code>false</code>.
+     */
+    public boolean ShowAccumulatedTime;
+    /**
+     * <code>true</code> - show cost in percents column, otherwise <code>false</code>.
+     */
+    public boolean ShowStepCostPercents;
+    /**
+     * <code>true</code> - show step cost time column, otherwise <code>false</code>.
+     */
+    public boolean ShowStepCostTime;
+    /**
+     * <code>true</code> - show log message column, otherwise <code>false</code>.
+     */
+    public boolean ShowLogMessage;
+    /**
+     * <code>true</code> - show after tracking summary, otherwise <code>false</code>.
+     */
+    public boolean ShowSummary;
+    /**
+     * <code>true</code> - place column starter symbol "| " on each row start, otherwise <code>false</code>.
+     */
+    public boolean ShowTableStart;
+    /**
+     * Show in statistics summary list of longest steps. Define the Number of steps to show.
      */
     public int ShowTopNLongest;
     /**
      * True - use {@link java.lang.System#nanoTime()}, otherwise use {@link android.os.SystemClock#elapsedRealtimeNanos()}.
+     * Ignored if {@link #CustomClock} is defined.
      */
     public boolean UseSystemNanos;
+    /**
+     * Custom source of timestamps. <code>null</code> - clock selected by {@link #UseSystemNanos} and API level. Applied
+     * on next {@link Meter#start(String)} call.
+     */
+    public Clock CustomClock;
+    /**
+     * <code>true</code> - capture CPU time of the thread on each step and iteration, and show CPU time and CPU/wall
+     * ratio columns, otherwise <code>false</code>. Applied on next {@link Meter#start(String)} call.
+     */
+    public boolean TrackCpuTime;
+    /**
+     * <code>true</code> - capture bytes allocated by the thread on each step and iteration, and show allocations column,
+     * otherwise <code>false</code>. Applied on next {@link Meter#start(String)} call.
+     */
+    public boolean TrackAllocations;
+    /**
+     * <code>true</code> - capture garbage collections counter and pause time on each step and iteration, and show GC
+     * column, otherwise <code>false</code>. Applied on next {@link Meter#start(String)} call.
+     */
+    public boolean TrackGc;
+    /**
+     * <code>true</code> - subtract GC pause time from the reported steps and iterations cost, otherwise
+     * <code>false</code>. Used only when {@link Config#TrackGc} is set. Applied on next {@link Meter#start(String)}
+     * call.
+     */
+    public boolean ExcludeGcTime;
+    /**
+     * Percentiles of iterations time reported for each loop, e.g. <code>{50, 90, 99, 99.9}</code>. Every iteration is
+     * recorded into fixed size histogram (~7.5 Kb per loop), so values cover the whole run even for endless loops.
+     * Empty or <code>null</code> - disable histograms (default). Applied on next {@link Meter#start(String)} call.
+     */
+    public double[] Percentiles;
+    /**
+     * Rule of loop iterations outliers detection: {@link Meter#OUTLIERS_NONE}, {@link Meter#OUTLIERS_TUKEY} or {@link
+     * Meter#OUTLIERS_Z_SCORE}. Median, MAD, outliers count and mean without outliers are reported for each loop.
+     */
+    public int OutliersRule;
+    /**
+     * Threshold of the outliers rule: k multiplier of IQR for Tukey fences (1.5 - outliers, 3.0 - far outliers), or
+     * limit of the modified z-score (3.5 is recommended).
+     */
+    public double OutliersThreshold;
+    /**
+     * <code>true</code> - statistics of {@link Meter#finish()} are formatted and printed by background thread, the
+     * measured thread only copies immutable {@link Report} snapshot and hands it off, otherwise <code>false</code>. Use
+     * {@link Meter#flush(long)} to wait for pending reports.
+     */
+    public boolean AsyncReporting;
+    /**
+     * Receiver of the tracking events. <code>null</code> - no events forwarding. Applied on next {@link
+     * Meter#start(String)} call.
+     */
+    public Listener CustomListener;
+    /**
+     * Allowed relative slowdown of a step or of loop iterations median against the {@link Baseline}, e.g. 0.1 - 10%.
+     */
+    public double RegressionTolerance;
+    /**
+     * Minimal absolute slowdown of a step in nanos reported as regression. Hides the noise of short steps. Loop
+     * iterations are compared by median and statistical significance test instead.
+     */
+    public long RegressionThreshold;
+    /**
+     * Quantity of the last warm up iterations used for stability check of {@link Meter#loopSteady(int)}.
+     */
+    public int WarmUpWindow;
+    /**
+     * Coefficient of variation (stddev / mean) of the warm up window that indicates steady state, e.g. 0.05 - 5%.
+     */
+    public double WarmUpThreshold;
+    /**
+     * Maximum quantity of warm up iterations. Loop switches to measurement even if steady state is not reached.
+     */
+    public int WarmUpBudget;
 
     /**
      * Default constructor
@@ -788,6 +1672,41 @@ public final class Meter {
       reset();
     }
 
+    /**
+     * Copy constructor.
+     *
+     * @param other configuration to copy.
+     */
+    public Config(final Config other) {
+      OutputTag = other.OutputTag;
+      MethodsTraceFilePath = other.MethodsTraceFilePath;
+      DoMethodsTrace = other.DoMethodsTrace;
+      ShowStepsGrid = other.ShowStepsGrid;
+      ShowAccumulatedTime = other.ShowAccumulatedTime;
+      ShowStepCostPercents = other.ShowStepCostPercents;
+      ShowStepCostTime = other.ShowStepCostTime;
+      ShowLogMessage = other.ShowLogMessage;
+      ShowSummary = other.ShowSummary;
+      ShowTableStart = other.ShowTableStart;
+      ShowTopNLongest = other.ShowTopNLongest;
+      UseSystemNanos = other.UseSystemNanos;
+      CustomClock = other.CustomClock;
+      TrackCpuTime = other.TrackCpuTime;
+      TrackAllocations = other.TrackAllocations;
+      TrackGc = other.TrackGc;
+      ExcludeGcTime = other.ExcludeGcTime;
+      Percentiles = (null == other.Percentiles) ? null : other.Percentiles.clone();
+      OutliersRule = other.OutliersRule;
+      OutliersThreshold = other.OutliersThreshold;
+      AsyncReporting = other.AsyncReporting;
+      CustomListener = other.CustomListener;
+      RegressionTolerance = other.RegressionTolerance;
+      RegressionThreshold = other.RegressionThreshold;
+      WarmUpWindow = other.WarmUpWindow;
+      WarmUpThreshold = other.WarmUpThreshold;
+      WarmUpBudget = other.WarmUpBudget;
+    }
+
     /**
      * Default path used for trace DUMPs.
      *
@@ -815,6 +1734,18 @@ public final class Meter {
       DoMethodsTrace = ShowStepsGrid = ShowAccumulatedTime = false;
       ShowStepCostPercents = ShowStepCostTime = ShowLogMessage = ShowSummary = ShowTableStart = UseSystemNanos = true;
       ShowTopNLongest = 5;
+      CustomClock = null;
+      TrackCpuTime = TrackAllocations = TrackGc = ExcludeGcTime = false;
+      Percentiles = null;
+      OutliersRule = OUTLIERS_TUKEY;
+      OutliersThreshold = 1.5;
+      AsyncReporting = false;
+      CustomListener = null;
+      RegressionTolerance = 0.1;
+      RegressionThreshold = Nanos.ONE_MILLIS / 10;
+      WarmUpWindow = 10;
+      WarmUpThreshold = 0.05;
+      WarmUpBudget = 1000;
     }
   }
 
@@ -861,471 +1792,4426 @@ public final class Meter {
 
     @Override
     public String toString() {
-      return String.format(Locale.US,
-          "Calibrate [St/Be/Lg/Sk/Lo/Re/Un/En/Po]: %.3f/%.3f/%.3f/%.3f/%.3f/%.3f/%.3f/%.3f/%.3f ms",
-          toMillis(Start), toMillis(Beat), toMillis(Log), toMillis(Skip),
-          toMillis(Loop), toMillis(Recap), toMillis(UnLoop), toMillis(End), toMillis(Pop));
+      final StringBuilder sb = new StringBuilder("Calibrate [St/Be/Lg/Sk/Lo/Re/Un/En/Po]: ");
+      final long[] values = {Start, Beat, Log, Skip, Loop, Recap, UnLoop, End, Pop};
+
+      for (int i = 0; i < values.length; i++) {
+        Text.millis((i > 0) ? sb.append('/') : sb, values[i], 0);
+      }
+
+      return sb.append(" ms").toString();
     }
   }
 
   /**
-   * Internal class for storing measurement statistics.
+   * Log-linear histogram of non-negative values (nanos). Each power of two range is split into {@link #HALF_BUCKETS}
+   * linear sub-buckets, so relative error of the reported values is not greater than 1/{@link #HALF_BUCKETS}. Memory
+   * is fixed, recording is constant time without allocations. Histograms are mergeable across loops and runs.
    */
-  private final static class Measure {
+  public final static class Histogram {
+    /**
+     * Number of bits used for sub-bucket addressing.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+    /**
+     * Number of linear sub-buckets for values less than 2^{@link #SUB_BUCKET_BITS}.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Number of sub-buckets in each next power of two range.
+     */
+    private static final int HALF_BUCKETS = SUB_BUCKETS >> 1;
+    /**
+     * Total number of buckets required for covering all positive long values.
+     */
+    public static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS) * HALF_BUCKETS;
+
+    /**
+     * Counters of the values per bucket.
+     */
+    private final long[] mCounts = new long[BUCKETS];
+    /**
+     * Total number of recorded values.
+     */
+    public long Count;
+    /**
+     * Minimal recorded value.
+     */
+    public long Min = Long.MAX_VALUE;
+    /**
+     * Maximal recorded value.
+     */
+    public long Max = Long.MIN_VALUE;
+
+    /**
+     * Record one value. Negative values are recorded as zero.
+     *
+     * @param value the value.
+     */
+    public void record(final long value) {
+      final long v = Math.max(0, value);
+
+      mCounts[indexOf(v)]++;
+      Count++;
+      Min = Math.min(Min, v);
+      Max = Math.max(Max, v);
+    }
+
+    /**
+     * Add all values of other histogram into this instance.
+     *
+     * @param other the histogram to merge.
+     * @return this instance, for chained calls.
+     */
+    public Histogram merge(final Histogram other) {
+      for (int i = 0; i < BUCKETS; i++) {
+        mCounts[i] += other.mCounts[i];
+      }
+
+      Count += other.Count;
+      Min = Math.min(Min, other.Min);
+      Max = Math.max(Max, other.Max);
+
+      return this;
+    }
+
+    /**
+     * Get value at the given percentile.
+     *
+     * @param percentile the percentile, in range [0..100].
+     * @return the value (middle of the bucket, limited by min/max), or zero if histogram is empty.
+     */
+    public long percentile(final double percentile) {
+      if (0 == Count) {
+        return 0;
+      }
+
+      final long target = Math.max(1, Math.min(Count, (long) Math.ceil(percentile / 100.0 * Count)));
+      long accumulated = 0;
+
+      for (int i = 0; i < BUCKETS; i++) {
+        accumulated += mCounts[i];
+
+        if (accumulated >= target) {
+          final long middle = lowerBound(i) + (width(i) >> 1);
+          return Math.max(Min, Math.min(Max, middle));
+        }
+      }
+
+      return Max;
+    }
+
+    /**
+     * Format values at the given percentiles, e.g. "p50/p99: 0.010/0.120 ms".
+     *
+     * @param percentiles the percentiles to report.
+     * @return formatted string.
+     */
+    public String toString(final double[] percentiles) {
+      return append(new StringBuilder(), percentiles).toString();
+    }
+
+    /**
+     * Append values at the given percentiles, e.g. "p50/p99: 0.010/0.120 ms".
+     *
+     * @param sb the output buffer.
+     * @param percentiles the percentiles to report.
+     * @return the output buffer.
+     */
+    public StringBuilder append(final StringBuilder sb, final double[] percentiles) {
+      for (int i = 0; i < percentiles.length; i++) {
+        final double p = percentiles[i];
+        sb.append((i > 0) ? "/p" : "p");
+
+        if (p == Math.rint(p)) {
+          sb.append((long) p);
+        } else {
+          sb.append(p);
+        }
+      }
+
+      sb.append(": ");
+
+      for (int i = 0; i < percentiles.length; i++) {
+        Text.millis((i > 0) ? sb.append('/') : sb, percentile(percentiles[i]), 0);
+      }
+
+      return sb.append(" ms");
+    }
+
+    /**
+     * Find bucket of the value.
+     *
+     * @param value non-negative value.
+     * @return the bucket index.
+     */
+    public static int indexOf(final long value) {
+      if (value < SUB_BUCKETS) {
+        return (int) value;
+      }
+
+      final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS + 1;
+
+      return SUB_BUCKETS + (shift - 1) * HALF_BUCKETS + (int) ((value >>> shift) - HALF_BUCKETS);
+    }
+
+    /**
+     * Get smallest value of the bucket.
+     *
+     * @param index the bucket index.
+     * @return the value.
+     */
+    public static long lowerBound(final int index) {
+      if (index < SUB_BUCKETS) {
+        return index;
+      }
+
+      final int shift = (index - SUB_BUCKETS) / HALF_BUCKETS + 1;
+
+      return ((long) ((index - SUB_BUCKETS) % HALF_BUCKETS + HALF_BUCKETS)) << shift;
+    }
+
+    /**
+     * Get quantity of values covered by the bucket.
+     *
+     * @param index the bucket index.
+     * @return the bucket width.
+     */
+    public static long width(final int index) {
+      return (index < SUB_BUCKETS) ? 1 : 1L << ((index - SUB_BUCKETS) / HALF_BUCKETS + 1);
+    }
+  }
+
+  /**
+   * Robust statistics of samples: median, median absolute deviation (MAD), quartiles and outliers. Unlike the mean
+   * with trimmed min/max, results are stable when samples contain a cluster of outliers (JIT compilation, page faults).
+   */
+  public final static class Robust {
+    /**
+     * Scale factor of the modified z-score: 0.6745 * (x - median) / MAD.
+     */
+    private static final double Z_SCORE_SCALE = 0.6745;
+
+    /**
+     * Quantity of samples.
+     */
+    public final int Count;
+    /**
+     * Median of samples.
+     */
+    public final double Median;
+    /**
+     * Median absolute deviation from the median.
+     */
+    public final double Mad;
+    /**
+     * First quartile.
+     */
+    public final double Q1;
+    /**
+     * Third quartile.
+     */
+    public final double Q3;
+    /**
+     * Quantity of detected outliers.
+     */
+    public final int Outliers;
+    /**
+     * Mean of samples, outliers excluded.
+     */
+    public final double Mean;
+
+    /**
+     * Calculate statistics of samples.
+     *
+     * @param samples the samples, array is not modified.
+     * @param rule the outliers rule: {@link Meter#OUTLIERS_NONE}, {@link Meter#OUTLIERS_TUKEY} or {@link
+     * Meter#OUTLIERS_Z_SCORE}.
+     * @param threshold the threshold of the outliers rule.
+     */
+    public Robust(final long[] samples, final int rule, final double threshold) {
+      final long[] sorted = samples.clone();
+      Arrays.sort(sorted);
+
+      Count = sorted.length;
+      Median = quantile(sorted, 0.5);
+      Q1 = quantile(sorted, 0.25);
+      Q3 = quantile(sorted, 0.75);
+
+      final long[] deviations = new long[Count];
+      for (int i = 0; i < Count; i++) {
+        deviations[i] = Math.round(Math.abs(sorted[i] - Median));
+      }
+      Arrays.sort(deviations);
+      Mad = quantile(deviations, 0.5);
+
+      final double iqr = Q3 - Q1;
+      int outliers = 0;
+      double sum = 0;
+
+      for (final long sample : sorted) {
+        final boolean isOutlier;
+
+        if (OUTLIERS_TUKEY == rule) {
+          isOutlier = sample < Q1 - threshold * iqr || sample > Q3 + threshold * iqr;
+        } else if (OUTLIERS_Z_SCORE == rule) {
+          isOutlier = Mad > 0 && Z_SCORE_SCALE * Math.abs(sample - Median) / Mad > threshold;
+        } else {
+          isOutlier = false;
+        }
+
+        if (isOutlier) {
+          outliers++;
+        } else {
+          sum += sample;
+        }
+      }
+
+      Outliers = outliers;
+      Mean = (Count == outliers) ? 0 : sum / (Count - outliers);
+    }
+
+    /**
+     * Get quantile of sorted samples, linear interpolation between closest ranks.
+     *
+     * @param sorted the sorted samples.
+     * @param q the quantile, in range [0..1].
+     * @return the quantile value, or zero if there are no samples.
+     */
+    public static double quantile(final long[] sorted, final double q) {
+      if (0 == sorted.length) {
+        return 0;
+      }
+
+      final double position = q * (sorted.length - 1);
+      final int lower = (int) Math.floor(position);
+      final int upper = Math.min(sorted.length - 1, lower + 1);
+
+      return sorted[lower] + (position - lower) * (sorted[upper] - sorted[lower]);
+    }
+  }
+
+  /**
+   * Result of statistical comparison of baseline and candidate samples. Confidence interval of the means difference
+   * is calculated by Welch's t-test, so one noisy run does not flip the verdict.
+   */
+  public final static class Comparison {
+    /**
+     * Mean of baseline samples.
+     */
+    public final double MeanBaseline;
+    /**
+     * Mean of candidate samples.
+     */
+    public final double MeanCandidate;
+    /**
+     * Ratio of means, candidate / baseline. Greater than 1 - candidate is slower.
+     */
+    public final double Ratio;
+    /**
+     * Lower bound of the means difference (candidate - baseline) confidence interval.
+     */
+    public final double Low;
+    /**
+     * Upper bound of the means difference (candidate - baseline) confidence interval.
+     */
+    public final double High;
+    /**
+     * Confidence level of the interval.
+     */
+    public final double Confidence;
+    /**
+     * Welch-Satterthwaite degrees of freedom.
+     */
+    public final double DegreesOfFreedom;
+    /**
+     * <code>true</code> - confidence interval does not contain zero, otherwise <code>false</code>.
+     */
+    public final boolean IsSignificant;
+    /**
+     * Verdict: {@link Nanos#COMPARE_EQUAL} if difference is not significant, {@link Nanos#COMPARE_LESS} if baseline
+     * is faster, {@link Nanos#COMPARE_GREATER} if baseline is slower.
+     */
+    public final int Verdict;
+
+    /**
+     * Compare samples.
+     *
+     * @param baseline the baseline samples, at least two.
+     * @param candidate the candidate samples, at least two.
+     * @param confidence confidence level of the interval, in range (0..1).
+     */
+    public Comparison(final long[] baseline, final long[] candidate, final double confidence) {
+      if (baseline.length < 2 || candidate.length < 2) {
+        throw new IllegalArgumentException("At least two samples expected on each side.");
+      }
+
+      if (confidence <= 0 || confidence >= 1) {
+        throw new IllegalArgumentException("Confidence should be in range (0..1), but got: " + confidence);
+      }
+
+      MeanBaseline = mean(baseline);
+      MeanCandidate = mean(candidate);
+      Ratio = (0 == MeanBaseline) ? Double.NaN : MeanCandidate / MeanBaseline;
+      Confidence = confidence;
+
+      final double vb = variance(baseline, MeanBaseline) / baseline.length;
+      final double vc = variance(candidate, MeanCandidate) / candidate.length;
+      final double error = Math.sqrt(vb + vc);
+
+      DegreesOfFreedom = (0 == error) ? Double.POSITIVE_INFINITY :
+          (vb + vc) * (vb + vc) / (vb * vb / (baseline.length - 1) + vc * vc / (candidate.length - 1));
+
+      final double t = studentQuantile(0.5 + confidence / 2, DegreesOfFreedom);
+      final double difference = MeanCandidate - MeanBaseline;
+
+      Low = difference - t * error;
+      High = difference + t * error;
+      IsSignificant = Low > 0 || High < 0;
+      Verdict = !IsSignificant ? Nanos.COMPARE_EQUAL : (difference > 0 ? Nanos.COMPARE_LESS : Nanos.COMPARE_GREATER);
+    }
+
+    /**
+     * Lower bound of the ratio confidence interval.
+     *
+     * @return the ratio, candidate / baseline. See {@link #ratio(double)} for zero baseline.
+     */
+    public double ratioLow() {
+      return ratio(Low);
+    }
+
+    /**
+     * Upper bound of the ratio confidence interval.
+     *
+     * @return the ratio, candidate / baseline. See {@link #ratio(double)} for zero baseline.
+     */
+    public double ratioHigh() {
+      return ratio(High);
+    }
+
+    /**
+     * Convert bound of the means difference into ratio. Zero baseline has no scale: bound greater than zero gives
+     * {@link Double#POSITIVE_INFINITY} (same as {@link Regression#change()}), other bounds give 1 - no change.
+     *
+     * @param bound the bound of the means difference.
+     * @return the ratio, candidate / baseline.
+     */
+    private double ratio(final double bound) {
+      if (0 == MeanBaseline) {
+        return (bound > 0) ? Double.POSITIVE_INFINITY : 1.0;
+      }
+
+      return 1.0 + bound / MeanBaseline;
+    }
+
+    /**
+     * Check is candidate slower than baseline at least by the given fraction with the comparison confidence. Example:
+     * <code>isSlowerBy(0.05)</code> - candidate is 5% or more slower.
+     *
+     * @param fraction the slowdown fraction.
+     * @return <code>true</code> - regression detected, otherwise <code>false</code>.
+     */
+    public boolean isSlowerBy(final double fraction) {
+      return ratioLow() >= 1.0 + fraction;
+    }
+
+    /**
+     * Check is candidate faster than baseline at least by the given fraction with the comparison confidence.
+     *
+     * @param fraction the speedup fraction.
+     * @return <code>true</code> - improvement detected, otherwise <code>false</code>.
+     */
+    public boolean isFasterBy(final double fraction) {
+      return ratioHigh() <= 1.0 - fraction;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return String.format(Locale.US, "ratio: %.3f [%.3f..%.3f] - diff: %.3f [%.3f..%.3f] ms - %.0f%% %s",
+          Ratio, ratioLow(), ratioHigh(), toMillis(MeanCandidate - MeanBaseline), toMillis(Low), toMillis(High),
+          Confidence * 100, IsSignificant ? "significant" : "not significant");
+    }
+
+    /**
+     * Calculate mean of samples.
+     *
+     * @param samples the samples.
+     * @return the mean.
+     */
+    private static double mean(final long[] samples) {
+      double sum = 0;
+
+      for (final long sample : samples) {
+        sum += sample;
+      }
+
+      return sum / samples.length;
+    }
+
+    /**
+     * Calculate unbiased variance of samples.
+     *
+     * @param samples the samples.
+     * @param mean the mean of samples.
+     * @return the variance.
+     */
+    private static double variance(final long[] samples, final double mean) {
+      double sum = 0;
+
+      for (final long sample : samples) {
+        sum += (sample - mean) * (sample - mean);
+      }
+
+      return sum / (samples.length - 1);
+    }
+
+    /**
+     * Quantile of the standard normal distribution, Acklam's rational approximation (relative error 1.15e-9).
+     *
+     * @param p the probability, in range (0..1).
+     * @return the quantile.
+     */
+    public static double normalQuantile(final double p) {
+      final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+          1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+      final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+          6.680131188771972e+01, -1.328068155288572e+01};
+      final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+          -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+      final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+          3.754408661907416e+00};
+      final double low = 0.02425;
+
+      if (p < low) {
+        final double q = Math.sqrt(-2 * Math.log(p));
+        return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5]) /
+            ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+      }
+
+      if (p > 1 - low) {
+        return -normalQuantile(1 - p);
+      }
+
+      final double q = p - 0.5;
+      final double r = q * q;
+      return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q /
+          (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+
+    /**
+     * Quantile of the Student's t-distribution, Cornish-Fisher expansion of the normal quantile. Accurate enough for
+     * confidence intervals with 3 and more degrees of freedom.
+     *
+     * @param p the probability, in range (0..1).
+     * @param df degrees of freedom.
+     * @return the quantile.
+     */
+    public static double studentQuantile(final double p, final double df) {
+      final double z = normalQuantile(p);
+
+      if (Double.isInfinite(df)) {
+        return z;
+      }
+
+      final double z3 = z * z * z, z5 = z3 * z * z, z7 = z5 * z * z, z9 = z7 * z * z;
+
+      return z + (z3 + z) / (4 * df)
+          + (5 * z5 + 16 * z3 + 3 * z) / (96 * df * df)
+          + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * df * df * df)
+          + (79 * z9 + 776 * z7 + 1482 * z5 - 1920 * z3 - 945 * z) / (92160 * df * df * df * df);
+    }
+  }
+
+  /**
+   * Bounded selection of the largest values. Min-heap of fixed capacity: the smallest of selected values is in the
+   * root, so each offer is O(1) for values that do not qualify and O(log N) otherwise. Memory is fixed and offers do
+   * not allocate.
+   */
+  private final static class TopN {
+    /**
+     * Heap of values.
+     */
+    private final long[] mCosts;
+    /**
+     * Identifiers of the values, in parallel with {@link #mCosts}.
+     */
+    private final long[] mIds;
+    /**
+     * Quantity of stored values.
+     */
+    private int mSize;
+
+    /**
+     * Create selection.
+     *
+     * @param capacity maximum quantity of selected values.
+     */
+    public TopN(final int capacity) {
+      mCosts = new long[Math.max(0, capacity)];
+      mIds = new long[Math.max(0, capacity)];
+    }
+
+    /**
+     * Get maximum quantity of selected values.
+     *
+     * @return the capacity.
+     */
+    public int capacity() {
+      return mCosts.length;
+    }
+
+    /**
+     * Offer a value. On equal values the first offered wins.
+     *
+     * @param cost the value.
+     * @param id identifier of the value.
+     */
+    public void offer(final long cost, final long id) {
+      if (mSize < mCosts.length) {
+        int i = mSize++;
+
+        // sift up
+        while (i > 0 && less(cost, id, mCosts[(i - 1) >> 1], mIds[(i - 1) >> 1])) {
+          mCosts[i] = mCosts[(i - 1) >> 1];
+          mIds[i] = mIds[(i - 1) >> 1];
+          i = (i - 1) >> 1;
+        }
+
+        mCosts[i] = cost;
+        mIds[i] = id;
+      } else if (mSize > 0 && cost > mCosts[0]) {
+        int i = 0;
+
+        // sift down
+        while (true) {
+          int child = (i << 1) + 1;
+
+          if (child >= mSize) {
+            break;
+          }
+
+          if (child + 1 < mSize && less(mCosts[child + 1], mIds[child + 1], mCosts[child], mIds[child])) {
+            child++;
+          }
+
+          if (!less(mCosts[child], mIds[child], cost, id)) {
+            break;
+          }
+
+          mCosts[i] = mCosts[child];
+          mIds[i] = mIds[child];
+          i = child;
+        }
+
+        mCosts[i] = cost;
+        mIds[i] = id;
+      }
+    }
+
+    /**
+     * Get selected values ordered from the largest. Equal values are ordered by identifier.
+     *
+     * @param costs output, sorted values. Length not less than {@link #size()}.
+     * @param ids output, identifiers of sorted values. Length not less than {@link #size()}.
+     * @return quantity of values.
+     */
+    public int sorted(final long[] costs, final long[] ids) {
+      for (int i = 0; i < mSize; i++) {
+        int j = i;
+
+        // insertion sort, heap is small
+        while (j > 0 && less(costs[j - 1], ids[j - 1], mCosts[i], mIds[i])) {
+          costs[j] = costs[j - 1];
+          ids[j] = ids[j - 1];
+          j--;
+        }
+
+        costs[j] = mCosts[i];
+        ids[j] = mIds[i];
+      }
+
+      return mSize;
+    }
+
+    /**
+     * Get quantity of selected values.
+     *
+     * @return the size.
+     */
+    public int size() {
+      return mSize;
+    }
+
+    /**
+     * Order of the heap: smaller value is less, on equal values later identifier is less.
+     */
+    private static boolean less(final long costA, final long idA, final long costB, final long idB) {
+      return costA < costB || (costA == costB && idA > idB);
+    }
+  }
+
+  /**
+   * Longest steps and loop iterations of the measurement, longest first.
+   */
+  public final static class Longest {
+    /**
+     * Indexes of the longest steps.
+     */
+    public final int[] Steps;
+    /**
+     * Total time of the longest steps.
+     */
+    public final long[] StepTimes;
+    /**
+     * Indexes of the loop steps, in parallel with {@link #Iterations}.
+     */
+    public final int[] Loops;
+    /**
+     * Numbers of the longest iterations inside own loop, zero based.
+     */
+    public final int[] Iterations;
+    /**
+     * Time of the longest iterations.
+     */
+    public final long[] IterationTimes;
+
+    /**
+     * Create snapshot of the selections.
+     *
+     * @param steps selection of steps.
+     * @param iterations selection of iterations.
+     */
+    private Longest(final TopN steps, final TopN iterations) {
+      final long[] ids = new long[Math.max(steps.size(), iterations.size())];
+
+      StepTimes = new long[steps.size()];
+      Steps = new int[steps.sorted(StepTimes, ids)];
+      for (int i = 0; i < Steps.length; i++) {
+        Steps[i] = (int) ids[i];
+      }
+
+      IterationTimes = new long[iterations.size()];
+      Loops = new int[iterations.sorted(IterationTimes, ids)];
+      Iterations = new int[Loops.length];
+      for (int i = 0; i < Loops.length; i++) {
+        Loops[i] = (int) (ids[i] >>> Integer.SIZE);
+        Iterations[i] = (int) ids[i];
+      }
+    }
+  }
+
+  /**
+   * Immutable snapshot of the measurement statistics. Calculated once, cached per measure and safe for querying from
+   * any thread. Labels, loops statistics and nested summaries are copied on creation, rows are formatted from the
+   * copies on first request and reflect measure and output configuration at the moment of creation.
+   */
+  public final static class Report {
+    /**
+     * Quantity of steps.
+     */
+    public final int Count;
+    /**
+     * Total time of the measurement.
+     */
+    public final long Total;
+    /**
+     * Total time of skipped steps.
+     */
+    public final long Skipped;
+    /**
+     * Total thread CPU time, zero if not tracked.
+     */
+    public final long Cpu;
+    /**
+     * Number of garbage collections, zero if not tracked.
+     */
+    public final long GcCount;
+    /**
+     * Time of garbage collections, zero if not tracked.
+     */
+    public final long GcTime;
+    /**
+     * <code>true</code> - CPU time is tracked, otherwise <code>false</code>.
+     */
+    public final boolean HasCpu;
+    /**
+     * <code>true</code> - garbage collections are tracked, otherwise <code>false</code>.
+     */
+    public final boolean HasGc;
+
+    /**
+     * Calculated columns, not modified after creation and not referencing the measure.
+     */
+    private final Columns mColumns;
+    /**
+     * Formatted rows of steps, rendered on first request from the columns.
+     */
+    private final String[] mRows;
+    /**
+     * Nested loops summary lines, per step. <code>null</code> - step is not an unloop of top level loop with nested
+     * loops.
+     */
+    private final List<List<String>> mNested;
+    /**
+     * Indexes of loop steps.
+     */
+    private final int[] mLoops;
+    /**
+     * Iterations time of loops, in parallel with {@link #mLoops}.
+     */
+    private final long[][] mSamples;
+    /**
+     * Histograms of loops, in parallel with {@link #mLoops}. Item is <code>null</code> if histogram is not tracked.
+     */
+    private final Histogram[] mHistograms;
+    /**
+     * Warm up iterations time of loops, in parallel with {@link #mLoops}. Item is <code>null</code> if loop has no warm
+     * up.
+     */
+    private final long[][] mWarmUps;
+    /**
+     * Indexes of the longest steps, longest first.
+     */
+    private final int[] mTop;
+    /**
+     * Outliers rule used for robust statistics.
+     */
+    private final int mOutliersRule;
+    /**
+     * Outliers threshold used for robust statistics.
+     */
+    private final double mOutliersThreshold;
+    /**
+     * Output configuration used for rows formatting, for detecting stale snapshots.
+     */
+    private final String mKey;
+
+    /**
+     * Calculate snapshot.
+     *
+     * @param config current configuration.
+     * @param m the measure.
+     */
+    private Report(final Config config, final Measure m) {
+      // rows are rendered lazily from copied data, so they use own copy of the output configuration
+      mColumns = new Columns(new Config(config), m);
+      mKey = key(config, m);
+      mOutliersRule = config.OutliersRule;
+      mOutliersThreshold = config.OutliersThreshold;
+
+      Count = mColumns.Count;
+      Total = m.total();
+      Skipped = mColumns.TotalSkipped;
+      Cpu = m.totalCpu();
+      GcCount = m.totalGcCount();
+      GcTime = m.totalGcTime();
+      HasCpu = null != m.CpuTimes;
+      HasGc = null != m.GcCounts;
+
+      mRows = new String[Count];
+      mNested = new ArrayList<>(Collections.<List<String>>nCopies(Count, null));
+
+      final List<Loop> loops = new ArrayList<>();
+      for (int i = 0; i < Count; i++) {
+        // nested loops summary, displayed only for top level loops
+        final Loop unloop = m.unloopOf(i);
+        if (null != unloop && null == unloop.Parent && null != unloop.Children) {
+          mNested.set(i, Collections.unmodifiableList(unloop.nested()));
+        }
+
+        final Loop loop = m.Loops.get(i);
+        if (null != loop) {
+          loops.add(loop);
+        }
+      }
+
+      mLoops = new int[loops.size()];
+      mSamples = new long[loops.size()][];
+      mHistograms = new Histogram[loops.size()];
+      mWarmUps = new long[loops.size()][];
+
+      for (int i = 0; i < mLoops.length; i++) {
+        final Loop loop = loops.get(i);
+
+        mLoops[i] = loop.Index;
+        mSamples[i] = loop.samples();
+        mHistograms[i] = (null == loop.Histogram) ? null : new Histogram().merge(loop.Histogram);
+        mWarmUps[i] = (null == loop.WarmUp) ? null : loop.WarmUp.curve();
+      }
+
+      mTop = top(config.ShowTopNLongest, m.TopSteps);
+    }
+
+    /**
+     * Get longest steps. Selection maintained during recording is used, full scan of columns only if configuration
+     * requests more steps than were selected.
+     *
+     * @param limit quantity of steps.
+     * @param selection selection maintained during recording.
+     * @return indexes of the longest steps.
+     */
+    private int[] top(final int limit, final TopN selection) {
+      if (limit <= 0) {
+        return new int[0];
+      }
+
+      if (limit > selection.capacity()) {
+        return mColumns.top(limit);
+      }
+
+      final long[] costs = new long[selection.size()];
+      final long[] ids = new long[selection.size()];
+      final int[] top = new int[Math.min(limit, selection.sorted(costs, ids))];
+
+      for (int i = 0; i < top.length; i++) {
+        top[i] = (int) ids[i];
+      }
+
+      return top;
+    }
+
+    /**
+     * Build key of the output configuration and state of the measure.
+     *
+     * @param config current configuration.
+     * @param m the measure.
+     * @return the key.
+     */
+    private static String key(final Config config, final Measure m) {
+      return m.Modifications + ":" + config.ShowTableStart + ":" + config.ShowStepsGrid + ":"
+          + config.ShowStepCostPercents + ":" + config.ShowStepCostTime + ":" + config.ShowAccumulatedTime + ":"
+          + config.ShowLogMessage + ":" + config.ShowTopNLongest + ":" + config.OutliersRule + ":"
+          + config.OutliersThreshold;
+    }
+
+    /**
+     * Check is snapshot up to date with the measure and configuration.
+     *
+     * @param config current configuration.
+     * @param m the measure.
+     * @return <code>true</code> - snapshot can be reused, otherwise <code>false</code>.
+     */
+    private boolean isActual(final Config config, final Measure m) {
+      return mKey.equals(key(config, m));
+    }
+
+    /**
+     * Get total time of the step.
+     *
+     * @param step the step index.
+     * @return time in nanos.
+     */
+    public long time(final int step) {
+      return mColumns.Total[step];
+    }
+
+    /**
+     * Get timestamp of the step.
+     *
+     * @param step the step index.
+     * @return timestamp in nanos.
+     */
+    public long start(final int step) {
+      return mColumns.Start[step];
+    }
+
+    /**
+     * Check is the step excluded from benchmarking.
+     *
+     * @param step the step index.
+     * @return <code>true</code> - step is skipped, otherwise <code>false</code>.
+     */
+    public boolean isSkipped(final int step) {
+      return mColumns.IsSkipped[step];
+    }
+
+    /**
+     * Get thread CPU time of the step.
+     *
+     * @param step the step index.
+     * @return time in nanos, zero if not tracked.
+     */
+    public long cpu(final int step) {
+      return (null == mColumns.Cpu) ? 0 : mColumns.Cpu[step];
+    }
+
+    /**
+     * Get bytes allocated by the step.
+     *
+     * @param step the step index.
+     * @return allocated bytes, zero if not tracked.
+     */
+    public long allocated(final int step) {
+      return (null == mColumns.Allocated) ? 0 : mColumns.Allocated[step];
+    }
+
+    /**
+     * Get number of garbage collections overlapped with the step.
+     *
+     * @param step the step index.
+     * @return number of collections, zero if not tracked.
+     */
+    public long gcCount(final int step) {
+      return (null == mColumns.GcCount) ? 0 : mColumns.GcCount[step];
+    }
+
+    /**
+     * Get time of garbage collections overlapped with the step.
+     *
+     * @param step the step index.
+     * @return time in nanos, zero if not tracked.
+     */
+    public long gcTime(final int step) {
+      return (null == mColumns.GcTime) ? 0 : mColumns.GcTime[step];
+    }
+
+    /**
+     * Get label (log message) of the step.
+     *
+     * @param step the step index.
+     * @return the label, or <code>null</code> if step has no label.
+     */
+    public String label(final int step) {
+      return mColumns.Labels[step];
+    }
+
+    /**
+     * Find first step with the label.
+     *
+     * @param label the label to search.
+     * @return index of the step, or -1 if not found.
+     */
+    public int indexOf(final String label) {
+      for (int i = 0; i < Count; i++) {
+        if (null != mColumns.Labels[i] && mColumns.Labels[i].equals(label)) {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+
+    /**
+     * Get formatted row of the step.
+     *
+     * @param step the step index.
+     * @return the row.
+     */
+    public String row(final int step) {
+      synchronized (mRows) {
+        if (null == mRows[step]) {
+          mRows[step] = mColumns.row(step);
+        }
+
+        return mRows[step];
+      }
+    }
+
+    /**
+     * Get nested loops summary of the step.
+     *
+     * @param step the step index.
+     * @return lines of summary, or <code>null</code> if step does not finalize top level loop with nested loops.
+     */
+    public List<String> nested(final int step) {
+      return mNested.get(step);
+    }
+
+    /**
+     * Get indexes of the longest steps, longest first.
+     *
+     * @return copy of the indexes.
+     */
+    public int[] top() {
+      return mTop.clone();
+    }
+
+    /**
+     * Get indexes of the loop steps.
+     *
+     * @return copy of the indexes.
+     */
+    public int[] loops() {
+      return mLoops.clone();
+    }
+
+    /**
+     * Get iterations time of the loop.
+     *
+     * @param step the loop step index.
+     * @return copy of the iterations time.
+     */
+    public long[] samples(final int step) {
+      return mSamples[loop(step)].clone();
+    }
+
+    /**
+     * Get warm up curve of the loop started by {@link Meter#loopSteady(int)}: time of each discarded iteration.
+     *
+     * @param step the loop step index.
+     * @return copy of the warm up iterations time, empty if loop has no warm up.
+     */
+    public long[] warmUp(final int step) {
+      final long[] curve = mWarmUps[loop(step)];
+
+      return (null == curve) ? new long[0] : curve.clone();
+    }
+
+    /**
+     * Get iterations time percentile of the loop.
+     *
+     * @param step the loop step index.
+     * @param percentile the percentile, in range [0..100].
+     * @return time in nanos.
+     */
+    public long percentile(final int step, final double percentile) {
+      final Histogram histogram = mHistograms[loop(step)];
+
+      if (null == histogram) {
+        throw new IllegalStateException("Histogram is not tracked. Enable Config.Percentiles.");
+      }
+
+      return histogram.percentile(percentile);
+    }
+
+    /**
+     * Get robust statistics of the loop iterations.
+     *
+     * @param step the loop step index.
+     * @return the statistics.
+     */
+    public Robust robust(final int step) {
+      return new Robust(mSamples[loop(step)], mOutliersRule, mOutliersThreshold);
+    }
+
+    /**
+     * Find position of the loop.
+     *
+     * @param step the loop step index.
+     * @return position in loop arrays.
+     * @throws IllegalArgumentException if step is not a loop.
+     */
+    private int loop(final int step) {
+      final int position = Arrays.binarySearch(mLoops, step);
+
+      if (position < 0) {
+        throw new IllegalArgumentException("Step #" + step + " is not a loop.");
+      }
+
+      return position;
+    }
+  }
+
+  /**
+   * Local store of the benchmarks baselines. Directory with one properties file per benchmark, keyed by steps labels:
+   * time of each step and distribution of each loop iterations (sorted samples, down sampled to {@link #SAMPLES}
+   * quantiles). Baselines are replaced only by {@link #accept(String, Report)}, or by any check when system property
+   * {@link #ACCEPT_PROPERTY} is set to <code>true</code>.
+   */
+  public final static class Baseline {
+    /**
+     * System property. <code>true</code> - checks accept the current measures as the new baselines.
+     */
+    public static final String ACCEPT_PROPERTY = "meter.baseline.accept";
+    /**
+     * Maximum quantity of stored iterations samples of a loop.
+     */
+    public static final int SAMPLES = 1000;
+    /**
+     * Limit of the Mann-Whitney z-score, loop is slower with one sided p-value less than 0.0015.
+     */
+    private static final double SIGNIFICANCE_Z = 3.0;
+    /**
+     * Minimal quantity of iterations on both sides for the significance test.
+     */
+    private static final int MIN_SAMPLES = 8;
+    /**
+     * Key prefix of the step time.
+     */
+    private static final String STEP = "step.";
+    /**
+     * Key prefix of the loop iterations samples.
+     */
+    private static final String LOOP = "loop.";
+
+    /**
+     * The baselines directory.
+     */
+    private final File mDirectory;
+
+    /**
+     * Create store.
+     *
+     * @param directory the baselines directory, created on first write.
+     */
+    public Baseline(final File directory) {
+      mDirectory = directory;
+    }
+
+    /**
+     * Get baseline file of the benchmark.
+     *
+     * @param benchmark the benchmark name.
+     * @return the file.
+     */
+    public File fileOf(final String benchmark) {
+      return new File(mDirectory, benchmark.replaceAll("[^A-Za-z0-9._-]", "_") + ".baseline");
+    }
+
+    /**
+     * Check is baseline of the benchmark stored.
+     *
+     * @param benchmark the benchmark name.
+     * @return <code>true</code> - baseline exists, otherwise <code>false</code>.
+     */
+    public boolean exists(final String benchmark) {
+      return fileOf(benchmark).isFile();
+    }
+
+    /**
+     * Store report as the new baseline of the benchmark, previous baseline is replaced.
+     *
+     * @param benchmark the benchmark name.
+     * @param report the report.
+     * @throws IOException if baseline cannot be written.
+     */
+    public void accept(final String benchmark, final Report report) throws IOException {
+      final Properties properties = new Properties();
+      final String[] keys = keys(report);
+
+      for (int i = 0; i < report.Count; i++) {
+        if (report.isSkipped(i)) {
+          continue;
+        }
+
+        properties.setProperty(STEP + keys[i], Long.toString(report.time(i)));
+      }
+
+      for (final int loop : report.loops()) {
+        final long[] samples = sample(report.samples(loop));
+        final StringBuilder sb = new StringBuilder(samples.length * 8);
+
+        for (int i = 0; i < samples.length; i++) {
+          (i > 0 ? sb.append(',') : sb).append(samples[i]);
+        }
+
+        properties.setProperty(LOOP + keys[loop], sb.toString());
+      }
+
+      if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+        throw new IOException("Cannot create baselines directory: " + mDirectory);
+      }
+
+      final Writer writer = new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(fileOf(benchmark)), "UTF-8"));
+      try {
+        properties.store(writer, "meter baseline: " + benchmark);
+      } finally {
+        writer.close();
+      }
+    }
+
+    /**
+     * Compare report with the stored baseline of the benchmark. Steps and loops not present in the baseline are
+     * ignored.
+     *
+     * @param benchmark the benchmark name.
+     * @param report the report.
+     * @param config the tolerances.
+     * @return found regressions, empty list if there is no baseline.
+     * @throws IOException if baseline cannot be read.
+     */
+    public List<Regression> compare(final String benchmark, final Report report, final Config config)
+        throws IOException {
+      final List<Regression> regressions = new ArrayList<>();
+
+      if (!exists(benchmark)) {
+        return regressions;
+      }
+
+      final Properties properties = new Properties();
+      final Reader reader = new InputStreamReader(new FileInputStream(fileOf(benchmark)), "UTF-8");
+      try {
+        properties.load(reader);
+      } finally {
+        reader.close();
+      }
+
+      final String[] keys = keys(report);
+      final double limit = 1.0 + config.RegressionTolerance;
+
+      for (int i = 0; i < report.Count; i++) {
+        final String expected = properties.getProperty(STEP + keys[i]);
+
+        if (null == expected || report.isSkipped(i)) {
+          continue;
+        }
+
+        final long before = Long.parseLong(expected);
+        final long after = report.time(i);
+
+        if (after - before > config.RegressionThreshold && after > before * limit) {
+          regressions.add(new Regression(i, keys[i], false, before, after));
+        }
+      }
+
+      for (final int loop : report.loops()) {
+        final String expected = properties.getProperty(LOOP + keys[loop]);
+
+        if (null == expected || expected.isEmpty()) {
+          continue;
+        }
+
+        final String[] values = expected.split(",");
+        final long[] before = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+          before[i] = Long.parseLong(values[i]);
+        }
+
+        final long[] after = sample(report.samples(loop));
+        if (before.length < MIN_SAMPLES || after.length < MIN_SAMPLES) {
+          continue;
+        }
+
+        final double medianBefore = Robust.quantile(before, 0.5);
+        final double medianAfter = Robust.quantile(after, 0.5);
+
+        if (medianAfter > medianBefore * limit && mannWhitney(before, after) > SIGNIFICANCE_Z) {
+          regressions.add(new Regression(loop, keys[loop], true, Math.round(medianBefore), Math.round(medianAfter)));
+        }
+      }
+
+      return regressions;
+    }
+
+    /**
+     * Compare report with the stored baseline of the benchmark. Report is accepted as the new baseline if there is no
+     * baseline yet, or if {@link #ACCEPT_PROPERTY} is set.
+     *
+     * @param benchmark the benchmark name.
+     * @param report the report.
+     * @param config the tolerances.
+     * @throws AssertionError if report is significantly slower than the baseline.
+     * @throws IOException if baseline cannot be read or written.
+     */
+    public void check(final String benchmark, final Report report, final Config config) throws IOException {
+      if (!exists(benchmark) || Boolean.getBoolean(ACCEPT_PROPERTY)) {
+        accept(benchmark, report);
+        return;
+      }
+
+      final List<Regression> regressions = compare(benchmark, report, config);
+
+      if (!regressions.isEmpty()) {
+        final StringBuilder sb = new StringBuilder("Performance regression of ").append(benchmark).append(':');
+
+        for (final Regression regression : regressions) {
+          sb.append("\n  ").append(regression);
+        }
+
+        throw new AssertionError(sb.toString());
+      }
+    }
+
+    /**
+     * Compose unique keys of the report steps: label, or "#{step}" for steps without label. Repeated labels get
+     * occurrence suffix "#2", "#3"...
+     *
+     * @param report the report.
+     * @return keys in order of steps.
+     */
+    private static String[] keys(final Report report) {
+      final String[] keys = new String[report.Count];
+      final Map<String, Integer> occurrences = new HashMap<>();
+
+      for (int i = 0; i < report.Count; i++) {
+        final String label = report.label(i);
+        final String key = (null == label) ? "#" + i : label;
+        final Integer previous = occurrences.get(key);
+        final int occurrence = (null == previous) ? 1 : previous + 1;
+
+        occurrences.put(key, occurrence);
+        keys[i] = (1 == occurrence) ? key : key + "#" + occurrence;
+      }
+
+      return keys;
+    }
+
+    /**
+     * Sort samples and reduce them to not more than {@link #SAMPLES} evenly spaced quantiles.
+     *
+     * @param samples the samples, array is modified.
+     * @return sorted samples.
+     */
+    private static long[] sample(final long[] samples) {
+      Arrays.sort(samples);
+
+      if (samples.length <= SAMPLES) {
+        return samples;
+      }
+
+      final long[] result = new long[SAMPLES];
+      for (int i = 0; i < SAMPLES; i++) {
+        result[i] = samples[(int) ((long) i * (samples.length - 1) / (SAMPLES - 1))];
+      }
+
+      return result;
+    }
+
+    /**
+     * Mann-Whitney U test of two sorted samples, normal approximation with average ranks of ties.
+     *
+     * @param before the baseline sorted samples.
+     * @param after the current sorted samples.
+     * @return z-score, positive if current samples tend to be greater.
+     */
+    private static double mannWhitney(final long[] before, final long[] after) {
+      final double n1 = before.length, n2 = after.length;
+      double ranks = 0; // sum of current samples ranks
+      int i = 0, j = 0;
+
+      while (i < before.length || j < after.length) {
+        final long value = (j >= after.length || (i < before.length && before[i] < after[j])) ? before[i] : after[j];
+        int ties1 = 0, ties2 = 0;
+
+        while (i < before.length && before[i] == value) {
+          i++;
+          ties1++;
+        }
+        while (j < after.length && after[j] == value) {
+          j++;
+          ties2++;
+        }
+
+        // ranks (i + j - ties + 1) .. (i + j), average rank of the ties group
+        final double rank = (i + j) - (ties1 + ties2 - 1) / 2.0;
+        ranks += ties2 * rank;
+      }
+
+      final double u = ranks - n2 * (n2 + 1) / 2;
+      final double sigma = Math.sqrt(n1 * n2 * (n1 + n2 + 1) / 12);
+
+      return (0 == sigma) ? 0 : (u - n1 * n2 / 2) / sigma;
+    }
+  }
+
+  /**
+   * Regression of a step or a loop found by {@link Baseline}.
+   */
+  public final static class Regression {
+    /**
+     * The step index.
+     */
+    public final int Step;
+    /**
+     * The baseline key of the step.
+     */
+    public final String Key;
+    /**
+     * <code>true</code> - median of the loop iterations regressed, otherwise <code>false</code> - step time.
+     */
+    public final boolean IsLoop;
+    /**
+     * Baseline time in nanos.
+     */
+    public final long Expected;
+    /**
+     * Current time in nanos.
+     */
+    public final long Actual;
+
+    /**
+     * Create regression.
+     */
+    public Regression(final int step, final String key, final boolean isLoop, final long expected, final long actual) {
+      Step = step;
+      Key = key;
+      IsLoop = isLoop;
+      Expected = expected;
+      Actual = actual;
+    }
+
+    /**
+     * Get relative change of the time.
+     *
+     * @return change, e.g. 0.25 - 25% slower.
+     */
+    public double change() {
+      return (0 == Expected) ? Double.POSITIVE_INFINITY : (double) (Actual - Expected) / Expected;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder sb = new StringBuilder(IsLoop ? "loop median #" : "step #").append(Step)
+          .append(" '").append(Key).append("': ");
+
+      Text.millis(sb, Expected, 0).append(" -> ");
+      Text.millis(sb, Actual, 0).append(" ms");
+
+      if (Expected > 0) {
+        Text.fixed(sb.append(" (+"), change() * 100, 1, 0).append("%)");
+      }
+
+      return sb.toString();
+    }
+  }
+
+  /**
+   * Crash surviving journal of the tracking events. Each event is appended as fixed width binary record into memory
+   * mapped file, so recorded data stays in the file even if the process dies: the OS flushes mapped pages. Labels are
+   * interned and stored once in the side table file "{journal}.labels". Attach as {@link Config#CustomListener}, one
+   * journal per meter (thread). {@link #replay(File)} rebuilds reports from the journal.
+   */
+  public final static class Journal implements Listener, Closeable {
+    /**
+     * Journal file signature.
+     */
+    private static final int MAGIC = 0x4d54524a; // "MTRJ"
+    /**
+     * Version of the records format.
+     */
+    private static final int VERSION = 1;
+    /**
+     * Size of one record in bytes: measure, index, extra, type, flags, timestamp. File header has the same size.
+     */
+    private static final int RECORD = 32;
+    /**
+     * Size of the file region mapped at once.
+     */
+    private static final int CHUNK = 1024 * 1024;
+    /**
+     * Record type. Step stored, extra is not used.
+     */
+    private static final int TYPE_STEP = 1;
+    /**
+     * Record type. Loop iteration stored, extra - number of the iteration.
+     */
+    private static final int TYPE_ITERATION = 2;
+    /**
+     * Record type. Log message assigned, extra - id of the label, -1 for <code>null</code>.
+     */
+    private static final int TYPE_LOG = 3;
+    /**
+     * Record type. Measure removed from stack.
+     */
+    private static final int TYPE_POP = 4;
+
+    /**
+     * Records file.
+     */
+    private final Region mRecords;
+    /**
+     * Labels side table file.
+     */
+    private final Region mLabels;
+    /**
+     * Interned labels, label - to - id.
+     */
+    private final Map<String, Integer> mIds = new HashMap<>();
+
+    /**
+     * Create journal, existing files are overwritten.
+     *
+     * @param file the journal file.
+     * @throws IOException if file cannot be created or mapped.
+     */
+    public Journal(final File file) throws IOException {
+      mRecords = new Region(file);
+      mLabels = new Region(labels(file));
+
+      final int position = mRecords.reserve(RECORD);
+      mRecords.Buffer.putInt(position + 4, VERSION);
+      mRecords.Buffer.putInt(position + 8, RECORD);
+      mRecords.Buffer.putInt(position, MAGIC);
+    }
+
+    /**
+     * Get labels side table file of the journal.
+     *
+     * @param file the journal file.
+     * @return the side table file.
+     */
+    private static File labels(final File file) {
+      return new File(file.getPath() + ".labels");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onStep(final int measure, final int index, final long flags, final long timestamp) {
+      append(TYPE_STEP, measure, index, 0, flags, timestamp);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onIteration(final int measure, final int loop, final int iteration, final long timestamp) {
+      append(TYPE_ITERATION, measure, loop, iteration, 0, timestamp);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onLog(final int measure, final int index, final String log) {
+      append(TYPE_LOG, measure, index, intern(log), 0, 0);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onPop(final int measure) {
+      append(TYPE_POP, measure, 0, 0, 0, 0);
+    }
+
+    /**
+     * Flush mapped data to the storage device and release files.
+     *
+     * @throws IOException if closing failed.
+     */
+    @Override
+    public void close() throws IOException {
+      mRecords.close();
+      mLabels.close();
+    }
+
+    /**
+     * Append record. Type is written last, so record torn by crash is not visible to reader.
+     */
+    private void append(final int type, final int measure, final int index, final int extra, final long flags,
+                        final long timestamp) {
+      final int position = mRecords.reserve(RECORD);
+      final MappedByteBuffer buffer = mRecords.Buffer;
+
+      buffer.putInt(position, measure);
+      buffer.putInt(position + 4, index);
+      buffer.putInt(position + 8, extra);
+      buffer.putLong(position + 16, flags);
+      buffer.putLong(position + 24, timestamp);
+      buffer.putInt(position + 12, type);
+    }
+
+    /**
+     * Get id of the label, store new label into side table.
+     *
+     * @param label the label.
+     * @return id of the label, -1 for <code>null</code>.
+     */
+    private int intern(final String label) {
+      if (null == label) {
+        return -1;
+      }
+
+      final Integer known = mIds.get(label);
+      if (null != known) {
+        return known;
+      }
+
+      // record: chars, then length + 1 written last (zero - end of table)
+      final int position = mLabels.reserve(4 + 2 * label.length());
+      for (int i = 0; i < label.length(); i++) {
+        mLabels.Buffer.putChar(position + 4 + 2 * i, label.charAt(i));
+      }
+      mLabels.Buffer.putInt(position, label.length() + 1);
+
+      final int id = mIds.size();
+      mIds.put(label, id);
+
+      return id;
+    }
+
+    /**
+     * Rebuild reports of the measures recorded into journal. Measures are replayed through a new meter instance with
+     * the recorded timestamps. Measures interrupted by crash are reported up to the last recorded event.
+     *
+     * @param file the journal file.
+     * @return reports of the popped measures in order of popping, then reports of not finished measures, innermost
+     * first.
+     * @throws IOException if journal cannot be read or has unknown format.
+     */
+    public static List<Report> replay(final File file) throws IOException {
+      final List<String> labels = readLabels(labels(file));
+      final List<Report> reports = new ArrayList<>();
+
+      final Meter meter = new Meter();
+      final FakeClock clock = new FakeClock();
+      meter.getConfig().CustomClock = clock;
+      long now = 0;
+
+      final RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        final MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+
+        if (buffer.limit() < RECORD || MAGIC != buffer.getInt(0) || VERSION != buffer.getInt(4)) {
+          throw new IOException("Not a meter journal: " + file);
+        }
+
+        for (int position = RECORD; position + RECORD <= buffer.limit(); position += RECORD) {
+          final int type = buffer.getInt(position + 12);
+          final long timestamp = buffer.getLong(position + 24);
+
+          if (TYPE_STEP == type || TYPE_ITERATION == type) {
+            clock.advance(timestamp - now);
+            now = timestamp;
+          }
+
+          if (TYPE_STEP == type) {
+            replayStep(meter, buffer.getLong(position + 16));
+          } else if (TYPE_ITERATION == type) {
+            meter.recap();
+          } else if (TYPE_LOG == type) {
+            final int id = buffer.getInt(position + 8);
+            meter.log((id >= 0 && id < labels.size()) ? labels.get(id) : null);
+          } else if (TYPE_POP == type) {
+            reports.add(meter.report());
+            meter.pop();
+          } else {
+            break; // end of recorded data
+          }
+        }
+      } finally {
+        raf.close();
+      }
+
+      while (meter.isTracking()) {
+        reports.add(meter.report());
+        meter.pop();
+      }
+
+      return reports;
+    }
+
+    /**
+     * Replay step by the meter API call matching the flags.
+     *
+     * @param meter the meter.
+     * @param flags recorded flags.
+     */
+    private static void replayStep(final Meter meter, final long flags) {
+      if ((flags & Bits.START) == Bits.START) {
+        meter.start();
+      } else if ((flags & Bits.END) == Bits.END) {
+        meter.end();
+      } else if ((flags & Bits.LOOP) == Bits.LOOP) {
+        final int counter = (int) (flags & Bits.MASK);
+        meter.loop(((flags & Bits.ENDLESS) == Bits.ENDLESS) ? -counter : counter);
+      } else if ((flags & Bits.UNLOOP) == Bits.UNLOOP) {
+        meter.unloop();
+      } else if ((flags & Bits.EXCLUDE) == Bits.EXCLUDE) {
+        meter.skip();
+      } else {
+        meter.beat();
+      }
+    }
+
+    /**
+     * Read labels side table.
+     *
+     * @param file the side table file.
+     * @return labels in order of ids.
+     * @throws IOException if file cannot be read.
+     */
+    private static List<String> readLabels(final File file) throws IOException {
+      final List<String> labels = new ArrayList<>();
+
+      final RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        final MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        int position = 0;
+
+        while (position + 4 <= buffer.limit()) {
+          final int length = buffer.getInt(position) - 1;
+
+          // zero length - end of table, chunks are contiguous so there are no gaps
+          if (length < 0 || position + 4 + 2 * length > buffer.limit()) {
+            break;
+          }
+
+          final char[] chars = new char[length];
+          for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar(position + 4 + 2 * i);
+          }
+
+          labels.add(new String(chars));
+          position += 4 + 2 * length;
+        }
+      } finally {
+        raf.close();
+      }
+
+      return labels;
+    }
+
+    /**
+     * Append-only file mapped into memory by chunks. Chunks overlap: next chunk is mapped from the end of the used
+     * space, so data is contiguous in file and not mapped tail stays zero.
+     */
+    private final static class Region {
+      /**
+       * The file.
+       */
+      private final RandomAccessFile mFile;
+      /**
+       * Currently mapped chunk.
+       */
+      public MappedByteBuffer Buffer;
+      /**
+       * Offset of the current chunk in file.
+       */
+      private long mOffset;
+
+      /**
+       * Create empty file and map the first chunk.
+       *
+       * @param file the file.
+       * @throws IOException if file cannot be created or mapped.
+       */
+      public Region(final File file) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        Buffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, CHUNK);
+      }
+
+      /**
+       * Reserve space in current chunk. If current one has not enough space, the next chunk is mapped starting at the
+       * end of the used space, so reserved space always directly follows the previous one.
+       *
+       * @param size size in bytes, not greater than chunk size.
+       * @return position of the reserved space in {@link #Buffer}.
+       */
+      public int reserve(final int size) {
+        if (Buffer.remaining() < size) {
+          try {
+            mOffset += Buffer.position();
+            Buffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, mOffset, CHUNK);
+          } catch (final IOException ex) {
+            throw new IllegalStateException("Journal file mapping failed", ex);
+          }
+        }
+
+        final int position = Buffer.position();
+        Buffer.position(position + size);
+
+        return position;
+      }
+
+      /**
+       * Flush mapped data and close file.
+       *
+       * @throws IOException if closing failed.
+       */
+      public void close() throws IOException {
+        Buffer.force();
+        mFile.close();
+      }
+    }
+  }
+
+  /**
+   * Background reporter. Formats and prints snapshots of ended measures on a single daemon thread, so measured thread
+   * pays only for the snapshot copy of primitive data and the hand-off.
+   */
+  private final static class Reporter {
+    /**
+     * Name of the reporter thread.
+     */
+    private static final String THREAD_NAME = "meter-reporter";
+    /**
+     * Submitted reports waiting for print.
+     */
+    private static final ConcurrentLinkedQueue<Reporter> sQueue = new ConcurrentLinkedQueue<>();
+    /**
+     * Quantity of submitted but not yet printed reports.
+     */
+    private static final AtomicInteger sPending = new AtomicInteger();
+    /**
+     * Monitor used for notifying waiters about printed reports.
+     */
+    private static final Object sLock = new Object();
+    /**
+     * Reporter thread, started on first submit.
+     */
+    private static Thread sThread;
+
+    /**
+     * Snapshot of the ended measure.
+     */
+    private final Report mReport;
+    /**
+     * Copy of the configuration on the moment of hand-off.
+     */
+    private final Config mConfig;
+    /**
+     * Output of the report.
+     */
+    private final Output mOutput;
+
+    /**
+     * Hidden constructor.
+     *
+     * @param report snapshot of the ended measure.
+     * @param config configuration copy.
+     * @param out output instance.
+     */
+    private Reporter(final Report report, final Config config, final Output out) {
+      mReport = report;
+      mConfig = config;
+      mOutput = out;
+    }
+
+    /**
+     * Queue snapshot for printing.
+     *
+     * @param report snapshot of the ended measure.
+     * @param config configuration copy, owned by reporter after the call.
+     * @param out output instance.
+     */
+    public static void submit(final Report report, final Config config, final Output out) {
+      sPending.incrementAndGet();
+      sQueue.offer(new Reporter(report, config, out));
+
+      LockSupport.unpark(thread());
+    }
+
+    /**
+     * Get reporter thread, start it if needed or if previous thread died.
+     *
+     * @return the reporter thread.
+     */
+    private static synchronized Thread thread() {
+      if (null == sThread || !sThread.isAlive()) {
+        sThread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            loop();
+          }
+        }, THREAD_NAME);
+        sThread.setDaemon(true);
+        sThread.start();
+      }
+
+      return sThread;
+    }
+
+    /**
+     * Wait until all submitted reports are printed.
+     *
+     * @param timeoutMillis maximum time to wait in milliseconds.
+     * @return <code>true</code> - nothing is pending, otherwise <code>false</code>.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     */
+    public static boolean await(final long timeoutMillis) throws InterruptedException {
+      final long deadline = System.currentTimeMillis() + timeoutMillis;
+
+      synchronized (sLock) {
+        while (sPending.get() > 0) {
+          final long left = deadline - System.currentTimeMillis();
+          if (left <= 0) {
+            return false;
+          }
+
+          sLock.wait(left);
+        }
+      }
+
+      return true;
+    }
+
+    /**
+     * Reporter thread body.
+     */
+    private static void loop() {
+      while (true) {
+        final Reporter task = sQueue.poll();
+
+        if (null == task) {
+          LockSupport.park(sLock);
+          continue;
+        }
+
+        try {
+          task.report();
+        } finally {
+          if (0 == sPending.decrementAndGet()) {
+            synchronized (sLock) {
+              sLock.notifyAll();
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Print the report. Failures, including errors thrown by custom outputs, are logged and do not stop the reporter
+     * thread.
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private void report() {
+      try {
+        print(mReport, mConfig, mOutput);
+      } catch (final Throwable ex) {
+        Log.e(mConfig.OutputTag, "report failed: " + ex);
+      }
+    }
+  }
+
+  /**
+   * Growable storage of long primitives. Values are kept in fixed size segments, so growing never copies already
+   * captured data and new memory is allocated only when the write position crosses a segment boundary.
+   */
+  private final static class Segments {
+    /**
+     * Number of bits used for addressing the value inside one segment.
+     */
+    private static final int SEGMENT_BITS = 8;
+    /**
+     * Capacity of one segment. Equal to {@link #PREALLOCATE}.
+     */
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    /**
+     * Mask for extracting the index inside the segment.
+     */
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * Directory of segments. Keeps only references, so its growth does not touch captured values.
+     */
+    private long[][] mSegments = new long[SEGMENT_SIZE][];
+    /**
+     * Quantity of allocated segments.
+     */
+    private int mAllocated;
+
+    /**
+     * Instantiates storage with one preallocated segment.
+     */
+    public Segments() {
+      mSegments[0] = new long[SEGMENT_SIZE];
+      mAllocated = 1;
+    }
+
+    /**
+     * Store value at specified index. Allocates a new segment if index is outside of allocated space.
+     *
+     * @param index the index of value.
+     * @param value the value to store.
+     */
+    public void set(final int index, final long value) {
+      final int segment = index >>> SEGMENT_BITS;
+
+      if (segment >= mAllocated) {
+        grow(segment);
+      }
+
+      mSegments[segment][index & SEGMENT_MASK] = value;
+    }
+
+    /**
+     * Get value by index.
+     *
+     * @param index the index of value, should be inside allocated space.
+     * @return stored value.
+     */
+    public long get(final int index) {
+      return mSegments[index >>> SEGMENT_BITS][index & SEGMENT_MASK];
+    }
+
+    /**
+     * Get capacity of the allocated space.
+     *
+     * @return quantity of values that can be stored without new allocations.
+     */
+    public int capacity() {
+      return mAllocated << SEGMENT_BITS;
+    }
+
+    /**
+     * Allocate segments up to specified one (inclusive).
+     *
+     * @param segment index of the segment that should become available.
+     */
+    private void grow(final int segment) {
+      if (segment >= mSegments.length) {
+        mSegments = Arrays.copyOf(mSegments, Math.max(segment + 1, mSegments.length * 2));
+      }
+
+      for (int i = mAllocated; i <= segment; i++) {
+        mSegments[i] = new long[SEGMENT_SIZE];
+      }
+
+      mAllocated = segment + 1;
+    }
+  }
+
+  /**
+   * Stack of int primitives. Used instead of boxed collections for keeping tracking calls free of allocations.
+   */
+  private final static class IntStack {
+    /**
+     * Stored values.
+     */
+    private int[] mValues = new int[16];
+    /**
+     * Quantity of stored values.
+     */
+    private int mSize;
+
+    /**
+     * Push value on top of the stack.
+     *
+     * @param value the value
+     */
+    public void push(final int value) {
+      if (mSize == mValues.length) {
+        mValues = Arrays.copyOf(mValues, mSize * 2);
+      }
+
+      mValues[mSize++] = value;
+    }
+
+    /**
+     * Extract value from top of the stack.
+     *
+     * @return the value
+     */
+    public int pop() {
+      return mValues[--mSize];
+    }
+
+    /**
+     * Get value from top of the stack without extracting it.
+     *
+     * @return the value
+     */
+    public int peek() {
+      return mValues[mSize - 1];
+    }
+
+    /**
+     * Get quantity of stored values.
+     *
+     * @return the size of the stack
+     */
+    public int size() {
+      return mSize;
+    }
+
+    /**
+     * Check is stack empty.
+     *
+     * @return <code>true</code> - no values in stack, otherwise <code>false</code>.
+     */
+    public boolean isEmpty() {
+      return 0 == mSize;
+    }
+  }
+
+  /**
+   * Internal class for storing measurement statistics.
+   */
+  private final static class Measure {
+    /**
+     * Unique identifier of the measurement instance.
+     */
+    public final int Id;
+    /**
+     * Unique identifier of the thread which instantiate the class.
+     */
+    @SuppressWarnings("unused")
+    public final long ThreadId;
+    /**
+     * The start time of tracking.
+     */
+    public final long Start;
+    /**
+     * Source of timestamps, resolved once on measure creation.
+     */
+    public final Clock Clock;
+    /**
+     * Receiver of the tracking events. <code>null</code> - events are not forwarded.
+     */
+    public final Listener Listener;
+    /**
+     * Source of thread CPU time. <code>null</code> - CPU time is not tracked.
+     */
+    public final Clock CpuClock;
+    /**
+     * Thread CPU time captured for each corresponding timestamp in {@link #Ranges}. <code>null</code> - CPU time is not
+     * tracked.
+     */
+    public final Segments CpuTimes;
+    /**
+     * Garbage collections counter captured for each corresponding timestamp in {@link #Ranges}. <code>null</code> - GC
+     * is not tracked.
+     */
+    public final Segments GcCounts;
+    /**
+     * Garbage collections total time (nanos) captured for each corresponding timestamp in {@link #Ranges}.
+     * <code>null</code> - GC is not tracked.
+     */
+    public final Segments GcTimes;
+    /**
+     * <code>true</code> - GC pause time is subtracted from steps and iterations cost, otherwise <code>false</code>.
+     */
+    public final boolean ExcludeGc;
+    /**
+     * Percentiles reported for loops. <code>null</code> - loops do not record iterations into histograms.
+     */
+    public final double[] Percentiles;
+    /**
+     * Longest steps, maintained during recording.
+     */
+    public final TopN TopSteps;
+    /**
+     * Longest loop iterations, maintained during recording. Identifier: loop step index in high 32 bits, iteration
+     * number in low 32 bits.
+     */
+    public final TopN TopIterations;
+    /**
+     * Last calculated statistics snapshot. <code>null</code> - not calculated yet.
+     */
+    public volatile Report CachedReport;
+    /**
+     * Counter of the measure modifications: steps, iterations and log messages. Invalidates {@link #CachedReport}.
+     */
+    public int Modifications;
+    /**
+     * Bytes allocated by the thread, captured for each corresponding timestamp in {@link #Ranges}. <code>null</code> -
+     * allocations are not tracked.
+     */
+    public final Segments AllocBytes;
+    /**
+     * Prepared arguments for allocations sampling.
+     */
+    private final Object[] mAllocArgs;
+    /**
+     * Bytes allocated between two samplings by the tracking code itself (sampling of allocations and CPU time).
+     */
+    public final long AllocOverhead;
+    /**
+     * Bytes allocated by one sampling of allocations.
+     */
+    private final long mSampleCost;
+    /**
+     * Accumulated own allocations of the meter: sampling overhead, storage growth, loops, logs. Excluded from stored
+     * samples.
+     */
+    private long mAllocOwn;
+    /**
+     * Stored timestamp of each benchmarking call.
+     */
+    public final Segments Ranges = new Segments();
+    /**
+     * Stored flags for each corresponding timestamp in {@link #Ranges}.
+     */
+    public final Segments Flags = new Segments();
+    /**
+     * Current position in the benchmarking array {@link #Ranges}.
+     */
+    public final AtomicInteger Position = new AtomicInteger();
+    /**
+     * Stack of step indexes of the loop's executed during benchmarking.
+     */
+    public final IntStack LoopsStack = new IntStack();
+    /**
+     * Loop that receives iterations, top of the {@link #LoopsStack}. <code>null</code> - if no active loop.
+     */
+    public Loop ActiveLoop;
+    /**
+     * Step index - to - Loop.
+     */
+    public final SparseArray<Loop> Loops = new SparseArray<>();
+    /**
+     * Step index - to - Log message.
+     */
+    public final SparseArray<String> Logs = new SparseArray<>(PREALLOCATE);
+    /**
+     * Reference on parent class instance.
+     */
+    public final Meter Parent;
+
+		/* [ CONSTRUCTOR ] ============================================================================================ */
+
+    /**
+     * Instantiates a new Measure.
+     *
+     * @param meter the meter
+     */
+    public Measure(final Meter meter) {
+      Parent = meter;
+
+      synchronized (Parent.mMeasures) {
+        Id = Parent.mMeasures.size();
+      }
+
+      ThreadId = Thread.currentThread().getId();
+      Clock = Parent.resolveClock();
+      Listener = Parent.getConfig().CustomListener;
+      CpuClock = Parent.getConfig().TrackCpuTime ? Meter.Clock.THREAD_CPU : null;
+      CpuTimes = (null == CpuClock) ? null : new Segments();
+
+      final boolean trackGc = Parent.getConfig().TrackGc && Management.isGcSupported();
+      GcCounts = trackGc ? new Segments() : null;
+      GcTimes = trackGc ? new Segments() : null;
+      ExcludeGc = trackGc && Parent.getConfig().ExcludeGcTime;
+
+      final double[] percentiles = Parent.getConfig().Percentiles;
+      Percentiles = (null == percentiles || 0 == percentiles.length) ? null : percentiles.clone();
+
+      TopSteps = new TopN(Parent.getConfig().ShowTopNLongest);
+      TopIterations = new TopN(Parent.getConfig().ShowTopNLongest);
+
+      final boolean trackAllocations = Parent.getConfig().TrackAllocations && Management.isAllocationsSupported();
+      AllocBytes = trackAllocations ? new Segments() : null;
+      mAllocArgs = trackAllocations ? Management.allocationArgs() : null;
+      mSampleCost = trackAllocations ? allocOverhead(false, false) : 0;
+      AllocOverhead = trackAllocations ? allocOverhead(null != CpuClock, trackGc) : 0;
+
+      Start = Clock.now();
+
+      add(Start, Bits.INCLUDE | Bits.START);
+    }
+
+    /**
+     * Get the last timestamp (maximum) of the measurement.  @return the long
+     */
+    public long theEnd() {
+      final int totalTimes = Position.get();
+
+      return Ranges.get(totalTimes - 1);
+    }
+
+    /**
+     * Get total time of measurement.  @return the long
+     */
+    public long total() {
+      return theEnd() - Start;
+    }
+
+    /**
+     * Sample quantity of bytes allocated by the thread.
+     *
+     * @return allocated bytes.
+     */
+    private long allocated() {
+      return Management.threadAllocatedBytes(mAllocArgs);
+    }
+
+    /**
+     * Calibrate the cost of sampling calls, sampling itself may allocate (reflection boxing on JVM).
+     *
+     * @param withCpu <code>true</code> - include CPU time sampling, otherwise <code>false</code>.
+     * @param withGc <code>true</code> - include GC statistics sampling, otherwise <code>false</code>.
+     * @return the minimal bytes allocated between two samplings.
+     */
+    @SuppressWarnings("deprecation")
+    private long allocOverhead(final boolean withCpu, final boolean withGc) {
+      if (Management.IS_ANDROID) {
+        Debug.startAllocCounting();
+      }
+
+      long overhead = Long.MAX_VALUE;
+      for (int i = 0; i < 3; i++) {
+        final long before = allocated();
+
+        if (withCpu) {
+          Meter.Clock.THREAD_CPU.now();
+        }
+
+        if (withGc) {
+          Management.gcCount();
+          Management.gcTime();
+        }
+
+        overhead = Math.min(overhead, allocated() - before);
+      }
+
+      return Math.max(0, overhead);
+    }
+
+    /**
+     * Assign log message to the step. Storage growth is excluded from allocations of the step.
+     *
+     * @param index the step index.
+     * @param log the log message.
+     */
+    public void log(final int index, final String log) {
+      Modifications++;
+
+      if (null != Listener) {
+        Listener.onLog(Id, index, log);
+      }
+
+      if (null == AllocBytes) {
+        Logs.append(index, log);
+        return;
+      }
+
+      final long before = allocated();
+      Logs.append(index, log);
+      mAllocOwn += allocated() - before + mSampleCost;
+    }
+
+    /**
+     * Get bytes allocated by the thread during the step.
+     *
+     * @param index the step index.
+     * @return allocated bytes, sampling overhead excluded.
+     */
+    public long allocated(final int index) {
+      if (null == AllocBytes) {
+        throw new IllegalStateException("Allocations are not tracked. Enable Config.TrackAllocations.");
+      }
+
+      final long bytes = AllocBytes.get(index) - AllocBytes.get(Math.max(0, index - 1));
+
+      return Math.max(0, bytes);
+    }
+
+    /**
+     * Get total thread CPU time of measurement.
+     *
+     * @return the CPU time in nanos, or zero if CPU time is not tracked.
+     */
+    public long totalCpu() {
+      final int totalTimes = Position.get();
+
+      return (null == CpuTimes) ? 0 : CpuTimes.get(totalTimes - 1) - CpuTimes.get(0);
+    }
+
+    /**
+     * Get number of garbage collections during the measurement.
+     *
+     * @return the collections counter, or zero if GC is not tracked.
+     */
+    public long totalGcCount() {
+      final int totalTimes = Position.get();
+
+      return (null == GcCounts) ? 0 : GcCounts.get(totalTimes - 1) - GcCounts.get(0);
+    }
+
+    /**
+     * Get time of garbage collections during the measurement.
+     *
+     * @return time in nanos, or zero if GC is not tracked.
+     */
+    public long totalGcTime() {
+      final int totalTimes = Position.get();
+
+      return (null == GcTimes) ? 0 : GcTimes.get(totalTimes - 1) - GcTimes.get(0);
+    }
+
+    /**
+     * Add int.
+     *
+     * @param time the time
+     * @param flags the flags
+     * @return the int
+     */
+    public int add(final long time, final long flags) {
+      final boolean isIteration = (flags & Bits.RECAP) == Bits.RECAP;
+      final boolean isLoopStart = (flags & Bits.LOOP) == Bits.LOOP;
+      final boolean isLoopEnd = (flags & Bits.UNLOOP) == Bits.UNLOOP;
+
+      final int index;
+
+      if (isLoopStart) {
+        final int counter = (int) (flags & Bits.MASK);
+        final long onlyFlags = flags & (~Bits.MASK);
+        index = addLoop(time, onlyFlags, counter);
+      } else if (isLoopEnd) {
+        index = addUnLoop(time, flags);
+      } else if (isIteration) {
+        index = addIteration(time);
+      } else {
+        index = addStep(time, flags);
+      }
+
+      if (!isIteration) {
+        offerStep(index);
+
+        if (null != Listener) {
+          Listener.onStep(Id, index, flags, time);
+        }
+      }
+
+      return index;
+    }
+
+    /**
+     * Offer the step to the longest steps selection. Skipped steps are not selected.
+     *
+     * @param index the step index.
+     */
+    private void offerStep(final int index) {
+      if (0 == index || (Flags.get(index) & Bits.EXCLUDE) == Bits.EXCLUDE) {
+        return;
+      }
+
+      final long gc = ExcludeGc ? GcTimes.get(index) - GcTimes.get(index - 1) : 0;
+
+      TopSteps.offer(Math.max(0, Ranges.get(index) - Ranges.get(index - 1) - gc), index);
+    }
+
+    private int addStep(final long time, final long original) {
+      final int index = Position.getAndIncrement();
+      Modifications++;
+
+      // steps recorded during warm up are excluded from statistics
+      final long flags = isWarmingUp() ? (original & ~Bits.INCLUDE) | Bits.EXCLUDE : original;
+
+      if (null != AllocBytes) {
+        return addStepAllocations(index, time, flags);
+      }
+
+      Ranges.set(index, time);
+      Flags.set(index, flags);
+
+      if (null != CpuTimes) {
+        CpuTimes.set(index, CpuClock.now());
+      }
+
+      if (null != GcCounts) {
+        GcCounts.set(index, Management.gcCount());
+        GcTimes.set(index, Management.gcTime());
+      }
+
+      return index;
+    }
+
+    private int addStepAllocations(final int index, final long time, final long flags) {
+      final int capacity = AllocBytes.capacity();
+      final long cpu = (null == CpuClock) ? 0 : CpuClock.now();
+      final long gcCount = (null == GcCounts) ? 0 : Management.gcCount();
+      final long gcTime = (null == GcTimes) ? 0 : Management.gcTime();
+      final long allocated = allocated();
+
+      Ranges.set(index, time);
+      Flags.set(index, flags);
+      AllocBytes.set(index, allocated - mAllocOwn);
+      mAllocOwn += AllocOverhead;
+
+      if (null != CpuTimes) {
+        CpuTimes.set(index, cpu);
+      }
+
+      if (null != GcCounts) {
+        GcCounts.set(index, gcCount);
+        GcTimes.set(index, gcTime);
+      }
+
+      // new segments of the storage are own allocations of the meter
+      if (capacity != AllocBytes.capacity()) {
+        mAllocOwn += allocated() - allocated;
+      }
+
+      return index;
+    }
+
+    /**
+     * Store iteration timestamp into the active loop. Constant time operation without allocations.
+     *
+     * @param time the time
+     * @return the index of the current step
+     */
+    public int addIteration(final long time) {
+      final Loop loop = ActiveLoop;
+      Modifications++;
+
+      if (null != loop && loop.IsDiscarded) {
+        return Position.get();
+      }
+
+      if (null != loop && null != loop.WarmUp && !loop.WarmUp.IsDone) {
+        if (loop.WarmUp.add(time)) {
+          warmedUp(loop, time);
+        }
+
+        return Position.get();
+      }
+
+      if (null != loop) {
+        if (null != CpuClock) {
+          loop.addCpu(CpuClock.now());
+        }
+
+        if (null != GcCounts) {
+          loop.addGc(Management.gcCount(), Management.gcTime());
+        }
+
+        if (null != AllocBytes) {
+          loop.addAllocated(allocated() - mAllocOwn);
+          mAllocOwn += AllocOverhead;
+        }
+
+        loop.add(time);
+
+        TopIterations.offer(loop.LastIteration, ((long) loop.Index << Integer.SIZE) | (loop.TotalCaptured - 1));
+
+        if (null != Listener) {
+          Listener.onIteration(Id, loop.Index, loop.TotalCaptured - 1, time);
+        }
+      }
+
+      return Position.get();
+    }
+
+    /**
+     * Check is any active loop in warm up phase.
+     *
+     * @return <code>true</code> - recorded data belongs to warm up, otherwise <code>false</code>.
+     */
+    private boolean isWarmingUp() {
+      for (Loop loop = ActiveLoop; null != loop; loop = loop.Parent) {
+        if (null != loop.WarmUp && !loop.WarmUp.IsDone) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    /**
+     * Close the warm up of the loop by skipped step, loop statistics start from this step.
+     *
+     * @param loop the loop.
+     * @param time time of the last warm up iteration.
+     */
+    private void warmedUp(final Loop loop, final long time) {
+      final int index = add(time, Bits.EXCLUDE);
+      log(index, WARM_UP);
+
+      loop.Start = time;
+
+      if (null != CpuTimes) {
+        loop.CpuStart = CpuTimes.get(index);
+      }
+
+      if (null != GcCounts) {
+        loop.GcCountStart = GcCounts.get(index);
+        loop.GcTimeStart = GcTimes.get(index);
+      }
+
+      if (null != AllocBytes) {
+        loop.AllocStart = AllocBytes.get(index);
+      }
+    }
+
+    private int addLoop(final long time, final long flags, final int size) {
+      final boolean isDiscarded = isWarmingUp();
+      final int index = addStep(time, flags);
+      final boolean isEndless = (flags & Bits.ENDLESS) == Bits.ENDLESS;
+      final long before = (null != AllocBytes) ? allocated() : 0;
+
+      ActiveLoop = new Loop(index, time, (isEndless ? -1 : 1) * size, ActiveLoop);
+      LoopsStack.push(index);
+
+      // loop opened during warm up of outer loop keeps nesting, but records nothing and is not reported
+      if (isDiscarded) {
+        ActiveLoop.discard();
+        return index;
+      }
+
+      Loops.append(index, ActiveLoop);
+
+      if (null != CpuTimes) {
+        ActiveLoop.trackCpu(CpuTimes.get(index));
+      }
+
+      if (null != GcCounts) {
+        ActiveLoop.trackGc(GcCounts.get(index), GcTimes.get(index), ExcludeGc);
+      }
+
+      if (null != Percentiles) {
+        ActiveLoop.trackHistogram(Percentiles);
+      }
+
+      if (null != AllocBytes) {
+        ActiveLoop.trackAllocations(AllocBytes.get(index));
+
+        // loop instance is own allocation of the meter, exclude it from the first iteration
+        mAllocOwn += allocated() - before + mSampleCost;
+      }
+
+      return index;
+    }
+
+    private int addUnLoop(final long time, final long flags) {
+      // into first part of bits we store step index for easier loop begin identifying
+      final int order = LoopsStack.isEmpty() ? 0 : LoopsStack.pop();
+      final int index = addStep(time, flags | order);
+      final Loop loop = ActiveLoop;
+
+      // outer loop becomes active again
+      if (null != loop) {
+        loop.End = time;
+        ActiveLoop = loop.Parent;
+      }
+
+      return index;
+    }
+
+    /**
+     * Get loop finalized by the step.
+     *
+     * @param index the step index.
+     * @return instance of the loop, or <code>null</code> if step is not an unloop.
+     */
+    public Loop unloopOf(final int index) {
+      final long flags = Flags.get(index);
+      final boolean isUnLoop = (flags & Bits.UNLOOP) == Bits.UNLOOP;
+
+      return isUnLoop ? Loops.get((int) (flags & Bits.MASK)) : null;
+    }
+
+    /**
+     * Get loop started or finalized by the step.
+     *
+     * @param index the step index.
+     * @return instance of the loop, or <code>null</code> if step is not a loop or an unloop.
+     */
+    public Loop loopOf(final int index) {
+      final Loop loop = Loops.get(index);
+
+      return (null == loop) ? unloopOf(index) : loop;
+    }
+
+    /**
+     * Prepare log output part for a specific step.
+     *
+     * @param index - step position.
+     * @return extracted log message for a step.
+     */
+    public String log(final int index) {
+      return log(index, Parent.getConfig());
+    }
+
+    /**
+     * Prepare log output part for a specific step.
+     *
+     * @param index - step position.
+     * @param config output configuration.
+     * @return extracted log message for a step.
+     */
+    public String log(final int index, final Config config) {
+      return log(new StringBuilder(PREALLOCATE), index, config).toString();
+    }
+
+    /**
+     * Append log output part of a specific step.
+     *
+     * @param sb the output buffer.
+     * @param index - step position.
+     * @param config output configuration.
+     * @return the output buffer.
+     */
+    public StringBuilder log(final StringBuilder sb, final int index, final Config config) {
+      final String log = Logs.get(index);
+
+      final long flags = Flags.get(index);
+      final boolean isLoop = (flags & Bits.LOOP) == Bits.LOOP;
+      final boolean isUnLoop = (flags & Bits.UNLOOP) == Bits.UNLOOP;
+
+      // DONE: loop statistics should be displayed on the loop exit, not at the beginning
+      final Loop loopInfo = (isUnLoop ? unloopOf(index) : null);
+      if (isUnLoop && null != loopInfo) {
+        loopInfo.stats(sb, config);
+      }
+
+      if (TextUtils.isEmpty(log)) {
+        return sb.append((isLoop) ? "loop" : "step").append(" #").append(index);
+      }
+
+      return sb.append(log);
+    }
+  }
+
+  /**
+   * Steady state detection of the loop warm up. Keeps rolling window of the last iterations time and the whole warm up
+   * curve, capacity of the curve is the warm up budget.
+   */
+  private final static class WarmUp {
+    /**
+     * Maximum quantity of points in the reported curve.
+     */
+    private static final int CURVE_POINTS = 8;
+
+    /**
+     * Ring buffer of the last iterations time.
+     */
+    private final long[] mWindow;
+    /**
+     * Steady state threshold of the coefficient of variation.
+     */
+    private final double mThreshold;
+    /**
+     * Time of all warm up iterations, capacity is the warm up budget.
+     */
+    public final long[] Curve;
+    /**
+     * Quantity of warm up iterations.
+     */
+    public int Count;
+    /**
+     * Timestamp of the last warm up iteration.
+     */
+    public long Last;
+    /**
+     * Coefficient of variation of the window on last iteration.
+     */
+    public double Variation = Double.NaN;
+    /**
+     * <code>true</code> - warm up finished, otherwise <code>false</code>.
+     */
+    public boolean IsDone;
+    /**
+     * <code>true</code> - steady state reached, otherwise <code>false</code> - warm up budget is exhausted.
+     */
+    public boolean IsSteady;
+
+    /**
+     * Create warm up state.
+     *
+     * @param window quantity of iterations for stability check.
+     * @param threshold steady state threshold of the coefficient of variation.
+     * @param budget maximum quantity of warm up iterations.
+     */
+    public WarmUp(final int window, final double threshold, final int budget) {
+      mWindow = new long[Math.max(2, window)];
+      mThreshold = threshold;
+      Curve = new long[Math.max(1, budget)];
+    }
+
+    /**
+     * Add warm up iteration.
+     *
+     * @param time timestamp of the iteration end.
+     * @return <code>true</code> - warm up finished, otherwise <code>false</code>.
+     */
+    public boolean add(final long time) {
+      final long sample = time - Last;
+      Last = time;
+
+      mWindow[Count % mWindow.length] = sample;
+      Curve[Count++] = sample;
+
+      if (Count >= mWindow.length) {
+        Variation = variation();
+        IsSteady = Variation <= mThreshold;
+      }
+
+      IsDone = IsSteady || Count >= Curve.length;
+
+      return IsDone;
+    }
+
+    /**
+     * Coefficient of variation of the window.
+     *
+     * @return stddev / mean, zero for zero mean.
+     */
+    private double variation() {
+      double sum = 0;
+      for (final long sample : mWindow) {
+        sum += sample;
+      }
+
+      final double mean = sum / mWindow.length;
+      double squares = 0;
+      for (final long sample : mWindow) {
+        squares += (sample - mean) * (sample - mean);
+      }
+
+      return (0 == mean) ? 0 : Math.sqrt(squares / (mWindow.length - 1)) / mean;
+    }
+
+    /**
+     * Get time of warm up iterations.
+     *
+     * @return copy of the iterations time.
+     */
+    public long[] curve() {
+      return Arrays.copyOf(Curve, Count);
+    }
+
+    /**
+     * Append warm up summary, e.g. "warm-up: 42 steady cv:3.1% - curve: 1.200/0.400/0.210/0.200 ms". Curve is
+     * averaged into not more than {@link #CURVE_POINTS} points.
+     *
+     * @param sb the output buffer.
+     * @return the output buffer.
+     */
+    public StringBuilder append(final StringBuilder sb) {
+      sb.append("warm-up: ").append(Count).append(IsSteady ? " steady" : IsDone ? " budget" : " active");
+
+      if (!Double.isNaN(Variation)) {
+        Text.fixed(sb.append(" cv:"), Variation * 100, 1, 0).append('%');
+      }
+
+      final int points = Math.min(CURVE_POINTS, Count);
+      sb.append(" - curve: ");
+
+      for (int i = 0; i < points; i++) {
+        final int from = i * Count / points, to = (i + 1) * Count / points;
+        long sum = 0;
+
+        for (int j = from; j < to; j++) {
+          sum += Curve[j];
+        }
+
+        Text.millis((i > 0) ? sb.append('/') : sb, sum / Math.max(1, to - from), 0);
+      }
+
+      return sb.append(" ms");
+    }
+  }
+
+  /**
+   * Loops iterations tracking.
+   */
+  private final static class Loop {
+    /**
+     * Timestamp's of each iteration.
+     */
+    public final long[] Iterations;
+    /**
+     * Index of first element in Iterations array.
+     */
+    public int Position;
+    /**
+     * Quantity of stored iterations.
+     */
+    public int Counter;
+    /**
+     * Total number of captured iterations.
+     */
+    public int TotalCaptured;
+    /**
+     * <code>true</code> indicates endless loop tracking, otherwise number of iterations is known.
+     */
+    @SuppressWarnings("unused")
+    public final boolean IsEndless;
+    /**
+     * Start time of the loop statistics. Moved to the end of warm up if loop has {@link #WarmUp}.
+     */
+    public long Start;
+    /**
+     * End time of the loop, assigned on unloop. Zero - loop is still active.
+     */
+    public long End;
+    /**
+     * Index of the step that started the loop.
+     */
+    public final int Index;
+    /**
+     * Outer loop, <code>null</code> for top level loops.
+     */
+    public final Loop Parent;
+    /**
+     * Depth of nesting. Zero for top level loops.
+     */
+    public final int Depth;
+    /**
+     * Index of the outer loop iteration during which this loop was started.
+     */
+    public final int ParentIteration;
+    /**
+     * Loops started inside iterations of this loop. <code>null</code> - no nested loops.
+     */
+    public List<Loop> Children;
+    /**
+     * Thread CPU time of each iteration, stored in parallel with {@link #Iterations}. <code>null</code> - CPU time is
+     * not tracked.
+     */
+    public long[] CpuIterations;
+    /**
+     * Thread CPU time at loop start.
+     */
+    public long CpuStart;
+    /**
+     * Bytes allocated by the thread on each iteration, stored in parallel with {@link #Iterations}. <code>null</code> -
+     * allocations are not tracked.
+     */
+    public long[] AllocIterations;
+    /**
+     * Bytes allocated by the thread at loop start.
+     */
+    public long AllocStart;
+    /**
+     * Garbage collections counter of each iteration, stored in parallel with {@link #Iterations}. <code>null</code> -
+     * GC is not tracked.
+     */
+    public long[] GcCountIterations;
+    /**
+     * Garbage collections time (nanos) of each iteration, stored in parallel with {@link #Iterations}.
+     * <code>null</code> - GC is not tracked.
+     */
+    public long[] GcTimeIterations;
+    /**
+     * Garbage collections counter at loop start.
+     */
+    public long GcCountStart;
+    /**
+     * Garbage collections time at loop start.
+     */
+    public long GcTimeStart;
+    /**
+     * <code>true</code> - GC time is subtracted from iterations cost, otherwise <code>false</code>.
+     */
+    public boolean ExcludeGc;
+    /**
+     * Time of the last added iteration. GC pause subtracted if {@link #ExcludeGc} is set.
+     */
+    public long LastIteration;
+    /**
+     * Histogram of all iterations time, including iterations dropped from {@link #Iterations} ring buffer.
+     * <code>null</code> - histogram is not tracked.
+     */
+    public Histogram Histogram;
+    /**
+     * Percentiles to report from the {@link #Histogram}.
+     */
+    public double[] Percentiles;
+    /**
+     * Warm up of the loop, <code>null</code> - loop measures from the first iteration.
+     */
+    public WarmUp WarmUp;
+    /**
+     * <code>true</code> - loop was opened during warm up of outer loop, its iterations are not recorded.
+     */
+    public boolean IsDiscarded;
+
+    /**
+     * Create class with preallocated space for timestamp's on each iteration.
+     *
+     * @param index the index of step that started the loop.
+     * @param time the time
+     * @param maxSize Number of expected iterations. If less than zero - class switch own mode to endless loops
+     * tracking.
+     * @param parent the outer loop, can be <code>null</code>.
+     */
+    public Loop(final int index, final long time, final int maxSize, final Loop parent) {
+      final int size = Math.abs(maxSize);
+
+      Index = index;
+      Start = time;
+      IsEndless = (maxSize < 0);
+      Iterations = new long[size];
+      Parent = parent;
+      Depth = (null == parent) ? 0 : parent.Depth + 1;
+      ParentIteration = (null == parent) ? 0 : parent.TotalCaptured;
+
+      if (null != parent) {
+        if (null == parent.Children) {
+          parent.Children = new ArrayList<>();
+        }
+
+        parent.Children.add(this);
+      }
+    }
+
+    /**
+     * Enable tracking of the thread CPU time for iterations.
+     *
+     * @param cpu thread CPU time at loop start.
+     */
+    public void trackCpu(final long cpu) {
+      CpuStart = cpu;
+      CpuIterations = new long[Iterations.length];
+    }
+
+    /**
+     * Enable tracking of the thread allocations for iterations.
+     *
+     * @param allocated bytes allocated by the thread at loop start.
+     */
+    public void trackAllocations(final long allocated) {
+      AllocStart = allocated;
+      AllocIterations = new long[Iterations.length];
+    }
+
+    /**
+     * Enable tracking of the garbage collections for iterations.
+     *
+     * @param count garbage collections counter at loop start.
+     * @param time garbage collections time at loop start.
+     * @param exclude <code>true</code> - subtract GC time from iterations cost, otherwise <code>false</code>.
+     */
+    public void trackGc(final long count, final long time, final boolean exclude) {
+      GcCountStart = count;
+      GcTimeStart = time;
+      ExcludeGc = exclude;
+      GcCountIterations = new long[Iterations.length];
+      GcTimeIterations = new long[Iterations.length];
+    }
+
+    /**
+     * Enable recording of iterations time into histogram.
+     *
+     * @param percentiles percentiles to report.
+     */
+    public void trackHistogram(final double[] percentiles) {
+      Percentiles = percentiles;
+      Histogram = new Histogram();
+    }
+
+    /**
+     * Discard the loop: detach it from the parent loop, iterations are not recorded.
+     */
+    public void discard() {
+      IsDiscarded = true;
+
+      if (null != Parent && null != Parent.Children) {
+        Parent.Children.remove(this);
+
+        if (Parent.Children.isEmpty()) {
+          Parent.Children = null;
+        }
+      }
+    }
+
+    /**
+     * Enable warm up, iterations are discarded until steady state.
+     *
+     * @param warmUp the warm up state.
+     */
+    public void trackWarmUp(final WarmUp warmUp) {
+      WarmUp = warmUp;
+      WarmUp.Last = Start;
+    }
+
+    /**
+     * Store thread CPU time of a new iteration. Should be called before {@link #add(long)}.
+     *
+     * @param cpu thread CPU time.
+     */
+    public void addCpu(final long cpu) {
+      CpuIterations[Position] = cpu;
+    }
+
+    /**
+     * Store allocated bytes of a new iteration. Should be called before {@link #add(long)}.
+     *
+     * @param allocated bytes allocated by the thread.
+     */
+    public void addAllocated(final long allocated) {
+      AllocIterations[Position] = allocated;
+    }
+
+    /**
+     * Store garbage collections statistics of a new iteration. Should be called before {@link #add(long)}.
+     *
+     * @param count garbage collections counter.
+     * @param time garbage collections time.
+     */
+    public void addGc(final long count, final long time) {
+      GcCountIterations[Position] = count;
+      GcTimeIterations[Position] = time;
+    }
+
+    /**
+     * Add time stamp of a new iteration.
+     *
+     * @param time time stamp.
+     * @return index of iteration.
+     */
+    public int add(final long time) {
+      final int index = Position;
+      LastIteration = time - last() - lastGcPause();
+
+      if (null != Histogram) {
+        Histogram.record(LastIteration);
+      }
+
+      Iterations[index] = time;
+
+      // cycled iteration pointer
+      if (Iterations.length <= (++Position)) {
+        Position = 0;
+      }
+
+      // if we in endless loop and overwriting old values
+      if (Iterations.length < (++Counter)) {
+        Counter = Iterations.length;
+      }
+
+      TotalCaptured++;
+
+      return index;
+    }
+
+    /**
+     * Get timestamp of the last stored iteration.
+     *
+     * @return the timestamp, or {@link #Start} if no iterations captured.
+     */
+    public long last() {
+      final int endPoint = (Position - 1 < 0) ? Iterations.length - 1 : Position - 1;
+
+      return (0 == Counter) ? Start : Iterations[endPoint];
+    }
+
+    /**
+     * Get thread CPU time of the last stored iteration.
+     *
+     * @return the CPU time, or {@link #CpuStart} if no iterations captured or CPU time is not tracked.
+     */
+    public long lastCpu() {
+      final int endPoint = (Position - 1 < 0) ? Iterations.length - 1 : Position - 1;
+
+      return (0 == Counter || null == CpuIterations) ? CpuStart : CpuIterations[endPoint];
+    }
+
+    /**
+     * Get allocated bytes sample of the last stored iteration.
+     *
+     * @return the allocated bytes, or {@link #AllocStart} if no iterations captured or allocations are not tracked.
+     */
+    public long lastAllocated() {
+      final int endPoint = (Position - 1 < 0) ? Iterations.length - 1 : Position - 1;
+
+      return (0 == Counter || null == AllocIterations) ? AllocStart : AllocIterations[endPoint];
+    }
+
+    /**
+     * Get GC pause of the iteration that is being added. Should be called before {@link #add(long)} updates position.
+     *
+     * @return time in nanos, zero if GC time is not excluded.
+     */
+    private long lastGcPause() {
+      if (!ExcludeGc || null == GcTimeIterations) {
+        return 0;
+      }
+
+      final int endPoint = (Position - 1 < 0) ? Iterations.length - 1 : Position - 1;
+      final long previous = (0 == Counter) ? GcTimeStart : GcTimeIterations[endPoint];
+
+      return GcTimeIterations[Position] - previous;
+    }
+
+    /**
+     * Get number of garbage collections overlapped with stored iterations.
+     *
+     * @return the collections counter, zero if GC is not tracked.
+     */
+    public long gcCount() {
+      final int endPoint = (Position - 1 < 0) ? Iterations.length - 1 : Position - 1;
+
+      return (0 == Counter || null == GcCountIterations) ? 0 : GcCountIterations[endPoint] - GcCountStart;
+    }
+
+    /**
+     * Get time of garbage collections overlapped with stored iterations.
+     *
+     * @return time in nanos, zero if GC is not tracked.
+     */
+    public long gcTime() {
+      final int endPoint = (Position - 1 < 0) ? Iterations.length - 1 : Position - 1;
+
+      return (0 == Counter || null == GcTimeIterations) ? 0 : GcTimeIterations[endPoint] - GcTimeStart;
+    }
+
+    /**
+     * Inclusive time of the loop, including the time of all nested loops.
+     *
+     * @return time in nanos.
+     */
+    public long inclusive() {
+      return ((0 == End) ? last() : End) - Start;
+    }
+
+    /**
+     * Exclusive time of the loop, the time of nested loops is excluded.
+     *
+     * @return time in nanos.
+     */
+    public long exclusive() {
+      long nested = 0;
+
+      if (null != Children) {
+        for (final Loop child : Children) {
+          nested += child.inclusive();
+        }
+      }
+
+      return inclusive() - nested;
+    }
+
+    /**
+     * Get time of the stored iterations. GC time is subtracted from iterations if {@link #ExcludeGc} is set.
+     *
+     * @return iterations time in nanos, in order of execution.
+     */
+    public long[] samples() {
+      final boolean exclude = ExcludeGc && null != GcTimeIterations;
+      final long[] samples = new long[Counter];
+      long stepN = Start, stepM, gcN = GcTimeStart;
+
+      for (int i = 0; i < Counter; i++) {
+        final int index = toArrayIndex(i, Position, Counter, Iterations.length);
+
+        stepM = Iterations[index];
+        samples[i] = stepM - stepN;
+
+        if (exclude) {
+          samples[i] = Math.max(0, samples[i] - (GcTimeIterations[index] - gcN));
+          gcN = GcTimeIterations[index];
+        }
+
+        stepN = stepM;
+      }
+
+      return samples;
+    }
+
+    /**
+     * Accumulate min, max and total of the stored iterations.
+     *
+     * @param acc accumulator: [0] - min, [1] - max, [2] - total, [3] - quantity of samples.
+     */
+    public void accumulate(final long[] acc) {
+      for (final long iteration : samples()) {
+        acc[0] = Math.min(acc[0], iteration);
+        acc[1] = Math.max(acc[1], iteration);
+        acc[2] += iteration;
+      }
+
+      acc[3] += Counter;
+    }
+
+    /**
+     * Calculate loop statistics.
+     *
+     * @param config the output configuration.
+     * @return string with loop metrics.
+     */
+    public String stats(final Config config) {
+      return stats(new StringBuilder(PREALLOCATE), config).toString();
+    }
+
+    /**
+     * Append statistics of the loop.
+     *
+     * @param sb the output buffer.
+     * @param config the output configuration.
+     * @return the output buffer.
+     */
+    public StringBuilder stats(final StringBuilder sb, final Config config) {
+      final long[] summary = summary();
+      final long avg = summary[0], min = summary[1], max = summary[2], loopTotal = summary[3];
+
+      // "avg: %.3fms min: %.3fms max: %.3fms sum:%.3fms calls:%d / "
+      // "avg/min/max/sum: %.3f/%.3f/%.3f/%.3f ms - calls:%d / "
+      // "~/-/+/∑: %.3f/%.3f/%.3f/%.3f ms - N:%d"
+
+      if (null != Parent) {
+        indent(sb, Depth).append("[loop #").append(Parent.Index).append(", iteration #").append(ParentIteration)
+            .append("] ");
+      }
+
+      Text.millis(sb.append("avg/min/max/sum: "), avg, 0).append('/');
+      Text.millis(sb, min, 0).append('/');
+      Text.millis(sb, max, 0).append('/');
+      Text.millis(sb, loopTotal, 0).append(" ms - calls:").append(TotalCaptured).append(" / ");
+
+      if (null != Histogram) {
+        Histogram.append(sb, Percentiles).append(" / ");
+      }
+
+      final Robust robust = (OUTLIERS_NONE == config.OutliersRule || 0 == Counter) ? null :
+          new Robust(samples(), config.OutliersRule, config.OutliersThreshold);
+      if (null != robust) {
+        Text.millis(sb.append("median/mad: "), robust.Median, 0).append('/');
+        Text.millis(sb, robust.Mad, 0).append(" ms - outliers: ").append(robust.Outliers);
+        Text.millis(sb.append(" - mean w/o outliers: "), robust.Mean, 0).append(" ms / ");
+      }
+
+      if (null != Children) {
+        Text.millis(sb.append("incl/excl: "), inclusive(), 0).append('/');
+        Text.millis(sb, exclusive(), 0).append(" ms / ");
+      }
+
+      if (null != CpuIterations) {
+        final long cpuTotal = lastCpu() - CpuStart;
+        Text.millis(sb.append("cpu avg/sum: "), cpuTotal / Math.max(1, TotalCaptured), 0).append('/');
+        Text.millis(sb, cpuTotal, 0).append(" ms - cpu/wall: ");
+        Text.fixed(sb, ratio(cpuTotal, loopTotal), 1, 0).append("% / ");
+      }
+
+      if (null != AllocIterations) {
+        final long allocTotal = Math.max(0, lastAllocated() - AllocStart);
+        sb.append("alloc avg/sum: ").append(allocTotal / Math.max(1, TotalCaptured)).append('/').append(allocTotal)
+            .append(" B / ");
+      }
+
+      if (null != GcCountIterations) {
+        Text.millis(sb.append("gc count/pause: ").append(gcCount()).append('/'), gcTime(), 0).append(" ms")
+            .append(ExcludeGc ? " excluded" : "").append(" / ");
+      }
+
+      if (null != WarmUp) {
+        WarmUp.append(sb).append(" / ");
+      }
+
+      return sb;
+    }
+
+    /**
+     * Calculate summary of the loop iterations.
+     *
+     * @return values {avg, min, max, sum}. Average excludes min and max values.
+     */
+    public long[] summary() {
+      final long[] acc = {Long.MAX_VALUE, Long.MIN_VALUE, 0, 0};
+      accumulate(acc);
+
+      long min = acc[0], max = acc[1], total = acc[2];
+      long loopTotal = last() - Start - (ExcludeGc ? gcTime() : 0);
+
+      // NOTE: http://en.wikipedia.org/wiki/Measurement_uncertainty
+      long avg = (total - min - max) / Math.max(1, Counter - 2);
+
+      // normalize output for empty Loops. make number good looking for output
+      if (0 == Counter) {
+        avg = min = max = loopTotal = 0;
+      }
+
+      return new long[]{avg, min, max, loopTotal};
+    }
+
+    /**
+     * Append indentation of the nesting depth.
+     *
+     * @param sb the output buffer.
+     * @param depth the nesting depth.
+     * @return the output buffer.
+     */
+    private static StringBuilder indent(final StringBuilder sb, final int depth) {
+      for (int i = 0; i < depth; i++) {
+        sb.append("  ");
+      }
+
+      return sb;
+    }
+
+    /**
+     * Calculate statistics of the nested loops, aggregated per nesting level.
+     *
+     * @return lines with metrics, one line per level. Empty if loop has no nested loops.
+     */
+    @SuppressWarnings({"PMD.AvoidInstantiatingObjectsInLoops"})
+    public List<String> nested() {
+      final List<String> lines = new ArrayList<>();
+      List<Loop> level = Children;
+
+      while (null != level && !level.isEmpty()) {
+        final List<Loop> next = new ArrayList<>();
+        final long[] acc = {Long.MAX_VALUE, Long.MIN_VALUE, 0, 0};
+        final Histogram merged = (null == Histogram) ? null : new Histogram();
+        long inclusive = 0, exclusive = 0;
+        int calls = 0;
+
+        for (final Loop loop : level) {
+          loop.accumulate(acc);
+
+          if (null != merged && null != loop.Histogram) {
+            merged.merge(loop.Histogram);
+          }
+
+          inclusive += loop.inclusive();
+          exclusive += loop.exclusive();
+          calls += loop.TotalCaptured;
+
+          if (null != loop.Children) {
+            next.addAll(loop.Children);
+          }
+        }
+
+        final int depth = level.get(0).Depth;
+        final long min = (0 == acc[3]) ? 0 : acc[0];
+        final long max = (0 == acc[3]) ? 0 : acc[1];
+        final long avg = (0 == acc[3]) ? 0 : (acc[2] - min - max) / Math.max(1, acc[3] - 2);
+
+        final StringBuilder line = indent(new StringBuilder(PREALLOCATE), depth);
+        line.append("nested level #").append(depth - Depth).append(": loops:").append(level.size());
+        Text.millis(line.append(" - avg/min/max: "), avg, 0).append('/');
+        Text.millis(line, min, 0).append('/');
+        Text.millis(line, max, 0).append(" ms - calls:").append(calls);
+        Text.millis(line.append(" / incl/excl: "), inclusive, 0).append('/');
+        Text.millis(line, exclusive, 0).append(" ms");
+
+        if (null != merged) {
+          merged.append(line.append(" / "), Percentiles);
+        }
+
+        lines.add(line.toString());
+
+        level = next;
+      }
+
+      return lines;
+    }
+  }
+
+  /**
+   * Columnar statistics of the measure. All columns, labels and loops statistics are calculated in one pass over the
+   * primitive storage, rows are rendered on demand into one reusable buffer without touching the measure.
+   */
+  private final static class Columns {
+    /**
+     * Quantity of steps.
+     */
+    public final int Count;
+    /**
+     * Timestamp of each step.
+     */
+    public final long[] Start;
+    /**
+     * Total time of each step. GC pause subtracted if {@link Measure#ExcludeGc} is set.
+     */
+    public final long[] Total;
+    /**
+     * Cost of each step in percents.
+     */
+    public final double[] CostPercents;
+    /**
+     * <code>true</code> - step excluded from benchmarking, otherwise <code>false</code>.
+     */
+    public final boolean[] IsSkipped;
+    /**
+     * Thread CPU time of each step. <code>null</code> - CPU time is not tracked.
+     */
+    public final long[] Cpu;
+    /**
+     * Bytes allocated by each step. <code>null</code> - allocations are not tracked.
+     */
+    public final long[] Allocated;
+    /**
+     * Number of garbage collections overlapped with each step. <code>null</code> - GC is not tracked.
+     */
+    public final long[] GcCount;
+    /**
+     * Time of garbage collections overlapped with each step. <code>null</code> - GC is not tracked.
+     */
+    public final long[] GcTime;
+    /**
+     * Raw labels of steps.
+     */
+    public final String[] Labels;
+    /**
+     * Total time of all skipped steps.
+     */
+    public final long TotalSkipped;
+
+    /**
+     * Start timestamp of the measure.
+     */
+    private final long mStart;
+    /**
+     * <code>true</code> - step is a loop, otherwise <code>false</code>.
+     */
+    private final boolean[] mIsLoop;
+    /**
+     * Statistics of the loop finalized by step. <code>null</code> - step is not an unloop or log messages are not
+     * shown.
+     */
+    private final String[] mLoopStats;
+    /**
+     * Reference on configuration.
+     */
+    private final Config mConfig;
+    /**
+     * Reusable row buffer.
+     */
+    private final StringBuilder mRow = new StringBuilder(PREALLOCATE);
+
+    /**
+     * Calculate columns of all steps.
+     *
+     * @param config current configuration
+     * @param m current measure instance
+     */
+    public Columns(final Config config, final Measure m) {
+      mConfig = config;
+      mStart = m.Start;
+
+      Count = m.Position.get();
+      Labels = new String[Count];
+      mIsLoop = new boolean[Count];
+      mLoopStats = new String[Count];
+      Start = new long[Count];
+      Total = new long[Count];
+      CostPercents = new double[Count];
+      IsSkipped = new boolean[Count];
+      Cpu = (null == m.CpuTimes) ? null : new long[Count];
+      Allocated = (null == m.AllocBytes) ? null : new long[Count];
+      GcCount = (null == m.GcCounts) ? null : new long[Count];
+      GcTime = (null == m.GcTimes) ? null : new long[Count];
+
+      final long end = m.theEnd();
+      long previous = m.Ranges.get(0), skipped = 0;
+
+      for (int i = 0; i < Count; i++) {
+        final int prev = Math.max(0, i - 1);
+        final long start = Start[i] = m.Ranges.get(i);
+
+        if (null != Cpu) {
+          Cpu[i] = m.CpuTimes.get(i) - m.CpuTimes.get(prev);
+        }
+
+        if (null != Allocated) {
+          Allocated[i] = m.allocated(i);
+        }
+
+        if (null != GcCount) {
+          GcCount[i] = m.GcCounts.get(i) - m.GcCounts.get(prev);
+          GcTime[i] = m.GcTimes.get(i) - m.GcTimes.get(prev);
+        }
+
+        // GC pause excluded on demand
+        Total[i] = Math.max(0, start - previous - (m.ExcludeGc ? GcTime[i] : 0));
+        CostPercents[i] = percent(start, m.Start, end) - percent(previous, m.Start, end);
+        IsSkipped[i] = ((m.Flags.get(i) & Bits.EXCLUDE) == Bits.EXCLUDE);
+        Labels[i] = m.Logs.get(i);
+        mIsLoop[i] = ((m.Flags.get(i) & Bits.LOOP) == Bits.LOOP);
+
+        // loop statistics are displayed on the loop exit
+        final boolean isUnLoop = (m.Flags.get(i) & Bits.UNLOOP) == Bits.UNLOOP;
+        final Loop unloop = (config.ShowLogMessage && isUnLoop) ? m.unloopOf(i) : null;
+        if (null != unloop) {
+          mLoopStats[i] = unloop.stats(new StringBuilder(PREALLOCATE), config).toString();
+        }
+
+        if (IsSkipped[i]) {
+          skipped += Total[i];
+        }
+
+        previous = start;
+      }
+
+      TotalSkipped = skipped;
+    }
+
+    /**
+     * Render the step row.
+     *
+     * @param index the step index.
+     * @return formatted row.
+     */
+    public String row(final int index) {
+      mRow.setLength(0);
+
+      if (mConfig.ShowTableStart) {
+        mRow.append("| ");
+      }
+
+      // grid of steps, only own cell of the step is filled
+      if (mConfig.ShowStepsGrid) {
+        for (int j = 0; j < Count; j++) {
+          mRow.append((j == index) ? Start[index] : 0).append(" | ");
+        }
+      }
+
+      if (mConfig.ShowStepCostPercents) {
+        Text.fixed(mRow, CostPercents[index], 2, 5).append("% | ");
+      }
+
+      if (mConfig.ShowStepCostTime) {
+        Text.millis(mRow, Total[index], 8).append(" ms | ");
+      }
+
+      if (null != Cpu) {
+        Text.millis(mRow.append("cpu "), Cpu[index], 8).append(" ms ");
+        Text.fixed(mRow, ratio(Cpu[index], Total[index]), 1, 5).append("% | ");
+      }
+
+      if (null != Allocated) {
+        Text.number(mRow, Allocated[index], 10).append(" B | ");
+      }
+
+      if (null != GcCount) {
+        Text.number(mRow.append("gc "), GcCount[index], 3).append(' ');
+        Text.millis(mRow, GcTime[index], 8).append(" ms | ");
+      }
+
+      if (mConfig.ShowAccumulatedTime) {
+        Text.millis(mRow, Start[index] - mStart, 8).append(" ms | ");
+      }
+
+      if (mConfig.ShowLogMessage) {
+        if (null != mLoopStats[index]) {
+          mRow.append(mLoopStats[index]);
+        }
+
+        if (TextUtils.isEmpty(Labels[index])) {
+          mRow.append(mIsLoop[index] ? "loop" : "step").append(" #").append(index);
+        } else {
+          mRow.append(Labels[index]);
+        }
+      }
+
+      return mRow.toString();
+    }
+
+    /**
+     * Select longest steps. Skipped steps are treated as zero cost.
+     *
+     * @param limit maximum quantity of steps to select.
+     * @return indexes of the steps, longest first.
+     */
+    public int[] top(final int limit) {
+      final int[] top = new int[Math.min(limit, Count)];
+      int size = 0;
+
+      for (int i = 0; i < Count; i++) {
+        final long cost = cost(i);
+
+        // insertion into small sorted array, first found wins on equal cost
+        int position = size;
+        while (position > 0 && cost(top[position - 1]) < cost) {
+          position--;
+        }
+
+        if (position < top.length) {
+          System.arraycopy(top, position, top, position + 1, Math.min(size, top.length - 1) - position);
+          top[position] = i;
+          size = Math.min(size + 1, top.length);
+        }
+      }
+
+      return top;
+    }
+
+    /**
+     * Get step cost used for ordering.
+     *
+     * @param index the step index.
+     * @return step total time, zero for skipped steps.
+     */
+    private long cost(final int index) {
+      return IsSkipped[index] ? 0 : Total[index];
+    }
+  }
+
+  /**
+   * Fixed precision numbers formatting straight into a buffer. Replacement of {@link String#format(String,
+   * Object...)} for the report columns: no format string parsing, no boxing and no intermediate strings. Values are
+   * right aligned to the column width and rounded half up, same as {@link Locale#US} format does.
+   */
+  private final static class Text {
+    /**
+     * Powers of ten for supported precisions.
+     */
+    private static final long[] SCALE = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    /**
+     * Hidden constructor.
+     */
+    private Text() {
+      throw new AssertionError();
+    }
+
+    /**
+     * Append nanoseconds as milliseconds with 3 digits precision, equivalent of "%{width}.3f" of {@link
+     * Meter#toMillis(long)}.
+     *
+     * @param sb the output buffer.
+     * @param nanos the value in nanoseconds.
+     * @param width minimal width of the column, zero - no alignment.
+     * @return the output buffer.
+     */
+    public static StringBuilder millis(final StringBuilder sb, final long nanos, final int width) {
+      final int start = sb.length();
+
+      // integer rounding to micros, no floating point error
+      final long micros = (Math.abs(nanos) + 500) / 1000;
+      if (nanos < 0) {
+        sb.append('-');
+      }
+
+      return pad(digits(sb, micros, 1000), start, width);
+    }
+
+    /**
+     * Append calculated nanoseconds as milliseconds with 3 digits precision.
+     *
+     * @param sb the output buffer.
+     * @param nanos the value in nanoseconds.
+     * @param width minimal width of the column, zero - no alignment.
+     * @return the output buffer.
+     */
+    public static StringBuilder millis(final StringBuilder sb, final double nanos, final int width) {
+      return fixed(sb, toMillis(nanos), 3, width);
+    }
+
+    /**
+     * Append value with fixed number of fraction digits, equivalent of "%{width}.{decimals}f".
+     *
+     * @param sb the output buffer.
+     * @param value the value.
+     * @param decimals number of fraction digits, [0..6].
+     * @param width minimal width of the column, zero - no alignment.
+     * @return the output buffer.
+     */
+    public static StringBuilder fixed(final StringBuilder sb, final double value, final int decimals,
+                                      final int width) {
+      final int start = sb.length();
+      final long scale = SCALE[decimals];
+      final double scaled = Math.abs(value) * scale;
+
+      if (Double.isNaN(value) || Double.isInfinite(value) || scaled >= Long.MAX_VALUE) {
+        sb.append(value);
+      } else {
+        if (value < 0) {
+          sb.append('-');
+        }
+
+        digits(sb, Math.round(scaled), scale);
+      }
+
+      return pad(sb, start, width);
+    }
+
+    /**
+     * Append integer value, equivalent of "%{width}d".
+     *
+     * @param sb the output buffer.
+     * @param value the value.
+     * @param width minimal width of the column, zero - no alignment.
+     * @return the output buffer.
+     */
+    public static StringBuilder number(final StringBuilder sb, final long value, final int width) {
+      final int start = sb.length();
+
+      return pad(sb.append(value), start, width);
+    }
+
+    /**
+     * Append scaled non-negative value as integer and fraction parts.
+     *
+     * @param sb the output buffer.
+     * @param scaled the value multiplied by scale.
+     * @param scale power of ten, defines number of fraction digits.
+     * @return the output buffer.
+     */
+    private static StringBuilder digits(final StringBuilder sb, final long scaled, final long scale) {
+      sb.append(scaled / scale);
+
+      if (scale > 1) {
+        final long fraction = scaled % scale;
+        sb.append('.');
+
+        // leading zeros of the fraction
+        for (long power = scale / 10; power > 1 && fraction < power; power /= 10) {
+          sb.append('0');
+        }
+
+        sb.append(fraction);
+      }
+
+      return sb;
+    }
+
+    /**
+     * Right align appended value by inserting spaces before it.
+     *
+     * @param sb the output buffer.
+     * @param start position of the value in buffer.
+     * @param width minimal width of the value.
+     * @return the output buffer.
+     */
+    private static StringBuilder pad(final StringBuilder sb, final int start, final int width) {
+      for (int i = sb.length() - start; i < width; i++) {
+        sb.insert(start, ' ');
+      }
+
+      return sb;
+    }
+  }
+
+  /**
+   * Writer of the reusable text buffers. Buffer content is copied into reusable characters array and written to the
+   * destination at once, without intermediate strings.
+   */
+  private final static class CharsWriter {
+    /**
+     * Destination of the text.
+     */
+    private final Writer mOut;
+    /**
+     * Reusable characters buffer for writing.
+     */
+    private char[] mChars = new char[PREALLOCATE];
+
+    /**
+     * Create writer.
+     *
+     * @param out destination of the text.
+     */
+    public CharsWriter(final Writer out) {
+      mOut = out;
+    }
+
+    /**
+     * Write buffer content to destination.
+     *
+     * @param sb the buffer.
+     * @throws IOException if writing failed.
+     */
+    public void write(final StringBuilder sb) throws IOException {
+      if (mChars.length < sb.length()) {
+        mChars = new char[sb.length() * 2];
+      }
+
+      sb.getChars(0, sb.length(), mChars, 0);
+      mOut.write(mChars, 0, sb.length());
+    }
+  }
+
+  /**
+   * Streaming export of the measure in JSON Lines or CSV format. Each record is composed in reusable buffer and
+   * written to the destination at once. CSV records share one header, fields not used by record type are empty.
+   */
+  private final static class Exporter {
+    /**
+     * Columns of the CSV export, also the names of JSON fields.
+     */
+    private static final String[] COLUMNS = {"type", "measure", "index", "flags", "start", "cost", "accumulated",
+        "skipped", "label", "depth", "parent", "calls", "min", "max", "avg"};
+    /**
+     * Column of the record type.
+     */
+    private static final int TYPE = 0;
+    /**
+     * Column of the measure id.
+     */
+    private static final int MEASURE = 1;
+    /**
+     * Column of the step index.
+     */
+    private static final int INDEX = 2;
+    /**
+     * Column of the step flags.
+     */
+    private static final int FLAGS = 3;
+    /**
+     * Column of the start timestamp.
+     */
+    private static final int START = 4;
     /**
-     * Unique identifier of the measurement instance.
+     * Column of the cost.
      */
-    public final int Id;
+    private static final int COST = 5;
     /**
-     * Unique identifier of the thread which instantiate the class.
+     * Column of the time since measure start.
      */
-    @SuppressWarnings("unused")
-    public final long ThreadId;
+    private static final int ACCUMULATED = 6;
     /**
-     * The start time of tracking.
+     * Column of the skipped flag.
      */
-    public final long Start;
+    private static final int SKIPPED = 7;
     /**
-     * Stored timestamp of each benchmarking call.
+     * Column of the label.
      */
-    public final long[] Ranges = new long[PREALLOCATE];
+    private static final int LABEL = 8;
     /**
-     * Stored flags for each corresponding timestamp in {@link #Ranges}.
+     * Column of the loop nesting depth.
      */
-    public final long[] Flags = new long[PREALLOCATE];
+    private static final int DEPTH = 9;
     /**
-     * Current position in the benchmarking array {@link #Ranges}.
+     * Column of the outer loop step index.
      */
-    public final AtomicInteger Position = new AtomicInteger();
+    private static final int PARENT = 10;
     /**
-     * Stack of loop's executed during benchmarking.
+     * Column of the quantity of steps or loop iterations.
      */
-    public final Queue<Integer> LoopsQueue = new ArrayDeque<>(PREALLOCATE);
+    private static final int CALLS = 11;
     /**
-     * Step index - to - Loop.
+     * Column of the minimal iteration time.
      */
-    public final SparseArray<Loop> Loops = new SparseArray<>();
+    private static final int MIN = 12;
     /**
-     * Step index - to - Log message.
+     * Column of the maximal iteration time.
      */
-    public final SparseArray<String> Logs = new SparseArray<>(PREALLOCATE);
+    private static final int MAX = 13;
     /**
-     * Reference on parent class instance.
+     * Column of the average iteration time.
      */
-    public final Meter Parent;
-    /** Calculated report steps. Collection filled by results in the moment of {@link #stats(Output)} call. */
-    public final List<Step> ReportSteps = new ArrayList<>();
+    private static final int AVG = 14;
 
-		/* [ CONSTRUCTOR ] ============================================================================================ */
+    /**
+     * Destination of the export.
+     */
+    private final CharsWriter mOut;
+    /**
+     * <code>true</code> - JSON Lines format, otherwise CSV.
+     */
+    private final boolean mIsJson;
+    /**
+     * Reusable record buffer.
+     */
+    private final StringBuilder mLine = new StringBuilder(PREALLOCATE);
+    /**
+     * Reusable cells of the CSV record.
+     */
+    private final StringBuilder[] mCells;
 
     /**
-     * Instantiates a new Measure.
+     * Create exporter. CSV header is written immediately.
      *
-     * @param meter the meter
+     * @param out destination of the export.
+     * @param format {@link Meter#EXPORT_JSON_LINES} or {@link Meter#EXPORT_CSV}.
+     * @throws IOException if writing failed.
      */
-    public Measure(final Meter meter) {
-      Parent = meter;
-
-      synchronized (Parent.mMeasures) {
-        Id = Parent.mMeasures.size();
+    public Exporter(final Writer out, final int format) throws IOException {
+      if (EXPORT_JSON_LINES != format && EXPORT_CSV != format) {
+        throw new IllegalArgumentException("Unknown export format: " + format);
       }
 
-      ThreadId = Thread.currentThread().getId();
-      Start = Parent.timestamp();
+      mOut = new CharsWriter(out);
+      mIsJson = (EXPORT_JSON_LINES == format);
+      mCells = new StringBuilder[mIsJson ? 0 : COLUMNS.length];
 
-      add(Start, Bits.INCLUDE | Bits.START);
+      for (int i = 0; i < mCells.length; i++) {
+        mCells[i] = new StringBuilder();
+        mLine.append((i > 0) ? "," : "").append(COLUMNS[i]);
+      }
+
+      if (!mIsJson) {
+        mOut.write(mLine.append('\n'));
+      }
     }
 
     /**
-     * Get the last timestamp (maximum) of the measurement.  @return the long
+     * Export measure summary, its steps and loops.
+     *
+     * @param m the measure.
+     * @throws IOException if writing failed.
      */
-    public long theEnd() {
-      final int totalTimes = Position.get();
+    public void measure(final Measure m) throws IOException {
+      final int count = m.Position.get();
 
-      return Ranges[totalTimes - 1];
-    }
+      begin("measure").field(MEASURE, m.Id).field(START, m.Start).field(COST, m.total()).field(CALLS, count).end();
 
-    /**
-     * Get total time of measurement.  @return the long
-     */
-    public long total() {
-      return theEnd() - Start;
+      long previous = m.Ranges.get(0);
+      for (int i = 0; i < count; i++) {
+        final long start = m.Ranges.get(i);
+        final long gc = (m.ExcludeGc && i > 0) ? m.GcTimes.get(i) - m.GcTimes.get(i - 1) : 0;
+        final long flags = m.Flags.get(i);
+
+        begin("step").field(MEASURE, m.Id).field(INDEX, i).field(FLAGS, flags).field(START, start)
+            .field(COST, Math.max(0, start - previous - gc)).field(ACCUMULATED, start - m.Start)
+            .field(SKIPPED, (flags & Bits.EXCLUDE) == Bits.EXCLUDE).field(LABEL, m.Logs.get(i)).end();
+
+        previous = start;
+      }
+
+      for (int i = 0; i < m.Loops.size(); i++) {
+        final Loop loop = m.Loops.valueAt(i);
+        final long[] summary = loop.summary();
+
+        begin("loop").field(MEASURE, m.Id).field(INDEX, loop.Index).field(FLAGS, m.Flags.get(loop.Index))
+            .field(START, loop.Start).field(COST, summary[3]).field(ACCUMULATED, loop.Start - m.Start)
+            .field(LABEL, m.Logs.get(loop.Index)).field(DEPTH, loop.Depth)
+            .field(PARENT, (null == loop.Parent) ? -1 : loop.Parent.Index).field(CALLS, loop.TotalCaptured)
+            .field(MIN, summary[1]).field(MAX, summary[2]).field(AVG, summary[0]).end();
+      }
     }
 
     /**
-     * Add int.
+     * Export calibration results, one record per operation. Nothing is written if calibration was not done.
      *
-     * @param time the time
-     * @param flags the flags
-     * @return the int
+     * @param c calibration results.
+     * @throws IOException if writing failed.
      */
-    public int add(final long time, final long flags) {
-      final boolean isIteration = (flags & Bits.RECAP) == Bits.RECAP;
-      final boolean isLoopStart = (flags & Bits.LOOP) == Bits.LOOP;
-      final boolean isLoopEnd = (flags & Bits.UNLOOP) == Bits.UNLOOP;
-
-      final int index;
+    public void calibrate(final Calibrate c) throws IOException {
+      final String[] names = {"start", "beat", "log", "skip", "loop", "recap", "unloop", "end", "pop"};
+      final long[] values = {c.Start, c.Beat, c.Log, c.Skip, c.Loop, c.Recap, c.UnLoop, c.End, c.Pop};
 
-      if (isLoopStart) {
-        final int counter = (int) (flags & Bits.MASK);
-        final long onlyFlags = flags & (~Bits.MASK);
-        index = addLoop(time, onlyFlags, counter);
-      } else if (isLoopEnd) {
-        // into first part of bits we store step index for easier loop begin identifying
-        final Integer loopIndex = LoopsQueue.poll();
-        final int order = (null == loopIndex) ? 0 : loopIndex;
-        index = addStep(time, flags | order);
-      } else if (isIteration) {
-        index = addIteration(time, flags);
-      } else {
-        index = addStep(time, flags);
+      if (0 == c.Start && 0 == c.Pop) {
+        return;
       }
 
-      return index;
+      for (int i = 0; i < names.length; i++) {
+        begin("calibrate").field(COST, values[i]).field(LABEL, names[i]).end();
+      }
     }
 
-    private int addStep(final long time, final long flags) {
-      final int index = Position.getAndIncrement();
-
-      Ranges[index] = time;
-      Flags[index] = flags;
-
-      return index;
-    }
+    /**
+     * Start a new record.
+     *
+     * @param type type of the record.
+     * @return this instance.
+     */
+    private Exporter begin(final String type) {
+      mLine.setLength(0);
 
-    private int addIteration(final long time, final long flags) {
-      final int index = Position.get();
-      final Integer loop;
-      final Loop loopInfo;
+      if (mIsJson) {
+        mLine.append("{\"type\":\"").append(type).append('"');
+      } else {
+        for (final StringBuilder cell : mCells) {
+          cell.setLength(0);
+        }
 
-      if (null != (loop = LoopsQueue.peek()) && null != (loopInfo = Loops.get(loop))) {
-        loopInfo.add(time, flags);
+        mCells[TYPE].append(type);
       }
 
-      return index;
+      return this;
     }
 
-    private int addLoop(final long time, final long flags, final int size) {
-      final int index = addStep(time, flags);
-      final boolean isEndless = (flags & Bits.ENDLESS) == Bits.ENDLESS;
-
-      Loops.append(index, new Loop(time, (isEndless ? -1 : 1) * size));
-      LoopsQueue.add(index);
+    /**
+     * Get buffer of the field value.
+     *
+     * @param column index of the column.
+     * @return buffer positioned for the value.
+     */
+    private StringBuilder value(final int column) {
+      if (mIsJson) {
+        return mLine.append(",\"").append(COLUMNS[column]).append("\":");
+      }
 
-      return index;
+      return mCells[column];
     }
 
     /**
-     * Format string.
+     * Add numeric field to record.
      *
-     * @return the string
+     * @param column index of the column.
+     * @param v the value.
+     * @return this instance.
      */
-    public String format() {
-      final StringBuilder format = new StringBuilder(1024);
+    private Exporter field(final int column, final long v) {
+      value(column).append(v);
+      return this;
+    }
 
-      if (Parent.getConfig().ShowTableStart) {
-        format.append("| ");
-      }
+    /**
+     * Add boolean field to record.
+     *
+     * @param column index of the column.
+     * @param v the value.
+     * @return this instance.
+     */
+    private Exporter field(final int column, final boolean v) {
+      value(column).append(v);
+      return this;
+    }
 
-      if (Parent.getConfig().ShowStepsGrid) {
-        final String grid = new String(new char[Position.get()]).replace("\0", "%d | ");
-        format.append(grid);
+    /**
+     * Add text field to record. <code>null</code> - JSON null or empty CSV cell.
+     *
+     * @param column index of the column.
+     * @param v the value.
+     * @return this instance.
+     */
+    private Exporter field(final int column, final String v) {
+      final StringBuilder sb = value(column);
+
+      if (mIsJson) {
+        if (null == v) {
+          sb.append("null");
+        } else {
+          json(sb, v);
+        }
+      } else if (null != v) {
+        csv(sb, v);
       }
 
-      if (Parent.getConfig().ShowStepCostPercents) {
-        format.append("%5.2f%% | ");
-      }
+      return this;
+    }
 
-      if (Parent.getConfig().ShowStepCostTime) {
-        format.append("%8.3f ms | ");
+    /**
+     * Finish record and write it to destination.
+     *
+     * @throws IOException if writing failed.
+     */
+    private void end() throws IOException {
+      if (mIsJson) {
+        mLine.append('}');
+      } else {
+        for (int i = 0; i < mCells.length; i++) {
+          mLine.append((i > 0) ? "," : "").append(mCells[i]);
+        }
       }
 
-      if (Parent.getConfig().ShowAccumulatedTime) {
-        format.append("%8.3f ms | ");
-      }
+      mOut.write(mLine.append('\n'));
+    }
 
-      if (Parent.getConfig().ShowLogMessage) {
-        format.append("%s");
+    /**
+     * Append JSON string literal.
+     *
+     * @param sb the output buffer.
+     * @param v the value.
+     */
+    private static void json(final StringBuilder sb, final String v) {
+      sb.append('"');
+
+      for (int i = 0; i < v.length(); i++) {
+        final char ch = v.charAt(i);
+
+        if ('"' == ch || '\\' == ch) {
+          sb.append('\\').append(ch);
+        } else if (ch < 0x20) {
+          sb.append("\\u00").append(Character.forDigit(ch >> 4, 16)).append(Character.forDigit(ch & 0xF, 16));
+        } else {
+          sb.append(ch);
+        }
       }
 
-      return format.toString();
+      sb.append('"');
     }
 
     /**
-     * Prepare log output part for a specific step.
+     * Append CSV cell, quoted if value contains separator, quote or line break.
      *
-     * @param index - step position.
-     * @return extracted log message for a step.
+     * @param sb the output buffer.
+     * @param v the value.
      */
-    public String log(final int index) {
-      final String log = Logs.get(index);
+    private static void csv(final StringBuilder sb, final String v) {
+      final boolean quote = v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.indexOf('\n') >= 0
+          || v.indexOf('\r') >= 0;
+
+      if (!quote) {
+        sb.append(v);
+        return;
+      }
 
-      final boolean isLoop = (Flags[index] & Bits.LOOP) == Bits.LOOP;
-      final boolean isUnLoop = (Flags[index] & Bits.UNLOOP) == Bits.UNLOOP;
-      final long custom = (Flags[index] & 0xffffffff);
-      final String name = ((isLoop) ? "loop" : "step");
+      sb.append('"');
 
-      // DONE: loop statistics should be displayed on the loop exit, not at the beginning
-      final Loop loopInfo = (isUnLoop ? Loops.get((int) custom) : null);
-      final String prefix = (isUnLoop && null != loopInfo) ? loopInfo.stats() : "";
-      final String body = (TextUtils.isEmpty(log) ? name + " #" + index : log);
-      final String suffix = "";
+      for (int i = 0; i < v.length(); i++) {
+        final char ch = v.charAt(i);
+        sb.append(ch);
+
+        if ('"' == ch) {
+          sb.append('"');
+        }
+      }
 
-      return (prefix + body + suffix);
+      sb.append('"');
     }
   }
 
   /**
-   * Loops iterations tracking.
+   * Streaming export of measures in Chrome Trace Event Format. Each event is composed in reusable buffer and written
+   * to the destination at once, so traces of any size do not require memory.
    */
-  private final static class Loop {
-    /**
-     * Timestamp's of each iteration.
-     */
-    public final long[] Iterations;
-    /**
-     * Flags storage for each time stamp.
-     */
-    public final long[] Flags;
+  private final static class Trace {
     /**
-     * Index of first element in Iterations array.
+     * Category of the loops and iterations async slices.
      */
-    public int Position;
+    private static final String LOOPS = "loop";
+
     /**
-     * Quantity of stored iterations.
+     * Destination of the export.
      */
-    public int Counter;
+    private final CharsWriter mOut;
     /**
-     * Total number of captured iterations.
+     * Process id of events.
      */
-    public int TotalCaptured;
+    private final int mPid = android.os.Process.myPid();
     /**
-     * <code>true</code> indicates endless loop tracking, otherwise number of iterations is known.
+     * Reusable event buffer.
      */
-    @SuppressWarnings("unused")
-    public final boolean IsEndless;
+    private final StringBuilder mEvent = new StringBuilder(PREALLOCATE);
     /**
-     * Start time of the loop statistics .
+     * <code>true</code> - no events written yet, otherwise <code>false</code>.
      */
-    public final long Start;
+    private boolean mIsFirst = true;
 
     /**
-     * Create class with preallocated space for timestamp's on each iteration.
+     * Create exporter.
      *
-     * @param time the time
-     * @param maxSize Number of expected iterations. If less than zero - class switch own mode to endless loops
-     * tracking.
+     * @param out destination of the export.
      */
-    public Loop(final long time, final int maxSize) {
-      final int size = Math.abs(maxSize);
-
-      Start = time;
-      IsEndless = (maxSize < 0);
-      Iterations = new long[size];
-      Flags = new long[size];
+    public Trace(final Writer out) {
+      mOut = new CharsWriter(out);
     }
 
     /**
-     * Add time stamp of a new iteration.
+     * Export measures as one trace document.
      *
-     * @param time time stamp.
-     * @param flags time stamp flags.
-     * @return index of iteration.
+     * @param measures measures to export.
+     * @throws IOException if writing failed.
      */
-    public int add(final long time, final long flags) {
-      final int index = Position;
-      Iterations[index] = time;
-      Flags[index] = flags;
+    public void measures(final List<Measure> measures) throws IOException {
+      mEvent.setLength(0);
+      mOut.write(mEvent.append("{\"traceEvents\":["));
 
-      // cycled iteration pointer
-      if (Iterations.length <= (++Position)) {
-        Position = 0;
-      }
+      // not finished measure lasts at least until the end of measures nested into it
+      final long[] ends = new long[measures.size()];
+      long latest = Long.MIN_VALUE;
 
-      // if we in endless loop and overwriting old values
-      if (Iterations.length < (++Counter)) {
-        Counter = Iterations.length;
+      for (int i = ends.length - 1; i >= 0; i--) {
+        final Measure m = measures.get(i);
+        final boolean isEnded = (m.Flags.get(m.Position.get() - 1) & Bits.END) == Bits.END;
+
+        ends[i] = isEnded ? m.theEnd() : Math.max(m.theEnd(), latest);
+        latest = Math.max(latest, ends[i]);
       }
 
-      TotalCaptured++;
+      for (int i = 0; i < ends.length; i++) {
+        measure(measures.get(i), ends[i]);
+      }
 
-      return index;
+      mEvent.setLength(0);
+      mOut.write(mEvent.append("\n],\"displayTimeUnit\":\"ns\"}\n"));
     }
 
     /**
-     * Calculate loop statistics.
+     * Export measure slice, its steps and loops.
      *
-     * @return string with loop metrics.
+     * @param m the measure.
+     * @param last end of the measure slice.
+     * @throws IOException if writing failed.
      */
-    public String stats() {
-      final long loopStart = Start;
-      final int endPoint = (Position - 1 < 0) ? Iterations.length - 1 : Position - 1;
-      long loopTotal = Iterations[endPoint] - loopStart;
+    private void measure(final Measure m, final long last) throws IOException {
+      final int count = m.Position.get();
 
-      long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
-      long avg, total = 0, iteration, stepN = loopStart, stepM;
+      begin(label(m, 0, "measure"), "measure", 'X', m, m.Start).append(",\"dur\":");
+      end(micros(mEvent, last - m.Start).append(",\"args\":{\"steps\":").append(count).append('}'));
 
-      for (int i = 0; i < Counter; i++) {
-        final int index = toArrayIndex(i, Position, Counter, Iterations.length);
+      for (int i = 1; i < count; i++) {
+        final long previous = m.Ranges.get(i - 1), start = m.Ranges.get(i);
+        final boolean isSkipped = (m.Flags.get(i) & Bits.EXCLUDE) == Bits.EXCLUDE;
 
-        stepM = Iterations[index];
-        iteration = stepM - stepN;
+        begin(label(m, i, "step"), isSkipped ? "skipped" : "step", 'X', m, previous).append(",\"dur\":");
+        end(micros(mEvent, start - previous).append(",\"args\":{\"index\":").append(i).append('}'));
+      }
 
-        min = Math.min(min, iteration);
-        max = Math.max(max, iteration);
-        total += iteration;
+      for (int i = 0; i < m.Loops.size(); i++) {
+        final Loop loop = m.Loops.valueAt(i);
 
-        stepN = stepM;
+        if (null == loop.Parent) {
+          loop(m, loop);
+        }
       }
+    }
 
-      // NOTE: http://en.wikipedia.org/wiki/Measurement_uncertainty
-      avg = (total - min - max) / Math.max(1, Counter - 2);
+    /**
+     * Export loop with its iterations and nested loops.
+     *
+     * @param m the measure.
+     * @param loop the loop.
+     * @throws IOException if writing failed.
+     */
+    private void loop(final Measure m, final Loop loop) throws IOException {
+      final String name = label(m, loop.Index, "loop");
+      final long end = (0 == loop.End) ? loop.last() : loop.End;
 
-      // normalize output for empty Loops. make number good looking for output
-      if (0 == Counter) {
-        avg = min = max = loopTotal = 0;
-      }
+      // only the last iterations are stored for endless loops, start of the first stored one is unknown
+      final int first = loop.TotalCaptured - loop.Counter;
+      long previous = (0 == first) ? loop.Start : -1;
+      int child = 0;
 
-      // "avg: %.3fms min: %.3fms max: %.3fms sum:%.3fms calls:%d / "
-      // "avg/min/max/sum: %.3f/%.3f/%.3f/%.3f ms - calls:%d / "
-      // "~/-/+/∑: %.3f/%.3f/%.3f/%.3f ms - N:%d"
+      end(begin(name, LOOPS, 'b', m, loop.Start).append(",\"args\":{\"calls\":").append(loop.TotalCaptured)
+          .append('}'));
 
-      return String.format(Locale.US, "avg/min/max/sum: %.3f/%.3f/%.3f/%.3f ms - calls:%d / ",
-          toMillis(avg), toMillis(min), toMillis(max), toMillis(loopTotal), TotalCaptured);
-    }
-  }
+      for (int i = 0; i < loop.Counter; i++) {
+        final int iteration = first + i;
+        final long point = loop.Iterations[toArrayIndex(i, loop.Position, loop.Counter, loop.Iterations.length)];
 
-  /**
-   * Statistics step.
-   */
-  private final static class Step {
-    /** Compare steps by cost of execution. {@link #Total} */
-    public final static Comparator<Step> Comparator = new Comparator<Step>() {
-      /** {@inheritDoc} */
-      @Override
-      public int compare(final Step lhs, final Step rhs) {
-        //region Implementation
+        if (previous >= 0) {
+          end(begin("iteration", LOOPS, 'b', m, previous).append(",\"args\":{\"n\":").append(iteration)
+              .append('}'));
+        }
 
-        // output: left less right  == -1
-        // output: left more right  == 1
-        // output: left equal right == 0
+        child = children(m, loop, child, iteration);
 
-        // first exclude "bad data" situations
-        if (null == lhs || null == rhs) {
-          return (null == lhs) ? -1 : 1;
+        if (previous >= 0) {
+          end(begin("iteration", LOOPS, 'e', m, point));
         }
 
-        // for skipped element shift there time to 0, that will make them last in list
-        return -1 * Long.valueOf(lhs.Total - lhs.Skipped).compareTo(rhs.Total - rhs.Skipped);
-        //endregion
+        previous = point;
       }
-    };
 
-    /**
-     * Is Step contains skipped data or not.
-     */
-    public final boolean IsSkipped;
-    /**
-     * How much time to skip. Steps may exclude cost of methods call captured by calibration.
-     */
-    public final long Skipped;
-    /**
-     * Step start time.
-     */
-    public final long Start;
-    /**
-     * Step total time.
-     */
-    public final long Total;
-    /**
-     * Accumulated total time.
-     */
-    public final long AccumulatedTotal;
-    /**
-     * Cost of step in percents.
-     */
-    public final double CostPercents;
-    /**
-     * Time grid row.
-     */
-    public final long[] Times;
-    /**
-     * Format string for output.
-     */
-    public final String Format;
-    /**
-     * Log message.
-     */
-    public final String Log;
-    /**
-     * reference on configuration.
-     */
-    private final Config mConfig;
+      children(m, loop, child, Integer.MAX_VALUE);
+      end(begin(name, LOOPS, 'e', m, end));
+    }
 
     /**
-     * Instantiates a new statistics Step.
+     * Export nested loops started before the end of the iteration.
      *
-     * @param config current configuration
-     * @param m current measure instance
-     * @param index the step index
+     * @param m the measure.
+     * @param loop the outer loop.
+     * @param from index of the first not exported nested loop.
+     * @param iteration the iteration number.
+     * @return index of the first not exported nested loop.
+     * @throws IOException if writing failed.
      */
-    public Step(final Config config, final Measure m, final int index) {
-      mConfig = config;
-
-      final long prevEndTime = m.Ranges[Math.max(0, index - 1)];
-
-      Start = m.Ranges[index];
-
-      // grid of steps
-      Times = new long[m.Position.get()];
-      Times[index] = Start;
-
-      // calculate length of step
-      Total = Start - prevEndTime;
-      AccumulatedTotal = Start - m.Start;
+    private int children(final Measure m, final Loop loop, final int from, final int iteration)
+        throws IOException {
+      int child = from;
 
-      IsSkipped = ((m.Flags[index] & Bits.EXCLUDE) == Bits.EXCLUDE);
-      Skipped = IsSkipped ? Total : 0;
-
-      CostPercents = percent(Start, m.Start, m.theEnd()) - percent(prevEndTime, m.Start, m.theEnd());
+      while (null != loop.Children && child < loop.Children.size()
+          && loop.Children.get(child).ParentIteration <= iteration) {
+        loop(m, loop.Children.get(child++));
+      }
 
-      Format = m.format();
-      Log = m.log(index);
+      return child;
     }
 
     /**
-     * Convert all statistics data to collection of parameters for string format.  @return the list
+     * Get label of the step.
+     *
+     * @param m the measure.
+     * @param index the step index.
+     * @param name default name of the step.
+     * @return the label.
      */
-    public List<Object> toParams() {
-      final List<Object> params = (mConfig.ShowStepsGrid) ?
-          Meter.toParams(Times) :
-          new ArrayList<>(PREALLOCATE);
+    private static String label(final Measure m, final int index, final String name) {
+      final String log = m.Logs.get(index);
 
-      if (mConfig.ShowStepCostPercents) {
-        params.add(CostPercents);
-      }
+      return TextUtils.isEmpty(log) ? name + " #" + index : log;
+    }
 
-      if (mConfig.ShowStepCostTime) {
-        params.add(toMillis(Total));
+    /**
+     * Start a new event.
+     *
+     * @param name name of the event.
+     * @param category category of the event.
+     * @param phase event type.
+     * @param m the measure, source of the async id and the thread id.
+     * @param timestamp the timestamp in nanoseconds.
+     * @return event buffer.
+     */
+    private StringBuilder begin(final String name, final String category, final char phase, final Measure m,
+                                final long timestamp) {
+      mEvent.setLength(0);
+      mEvent.append(mIsFirst ? "\n" : ",\n").append("{\"name\":");
+      Exporter.json(mEvent, name);
+      mEvent.append(",\"cat\":\"").append(category).append("\",\"ph\":\"").append(phase).append('"');
+
+      if ('X' != phase) {
+        mEvent.append(",\"id\":").append(m.Id);
       }
 
-      if (mConfig.ShowAccumulatedTime) {
-        params.add(toMillis(AccumulatedTotal));
-      }
+      mEvent.append(",\"pid\":").append(mPid).append(",\"tid\":").append(m.ThreadId).append(",\"ts\":");
+      mIsFirst = false;
 
-      if (mConfig.ShowLogMessage) {
-        params.add(Log);
-      }
+      return micros(mEvent, timestamp);
+    }
 
-      return params;
+    /**
+     * Finish the event and write it to destination.
+     *
+     * @param sb event buffer.
+     * @throws IOException if writing failed.
+     */
+    private void end(final StringBuilder sb) throws IOException {
+      mOut.write(sb.append('}'));
     }
 
     /**
-     * {@inheritDoc}
+     * Append nanoseconds as microseconds, the time unit of the format.
+     *
+     * @param sb the output buffer.
+     * @param nanos the value in nanoseconds.
+     * @return the output buffer.
      */
-    @Override
-    public String toString() {
-      return String.format(Locale.US, Format, toParams().toArray());
+    private static StringBuilder micros(final StringBuilder sb, final long nanos) {
+      if (nanos < 0) {
+        sb.append('-');
+      }
+
+      return Text.digits(sb, Math.abs(nanos), 1000);
     }
   }
 }
@@ -7,16 +7,27 @@ import com.artfulbits.benchmark.junit.Sampling;
 import org.junit.*;
 import org.junit.rules.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
+import static org.junit.Assume.*;
 
 /**
  * jUnit tests for Meter class.
@@ -31,6 +42,8 @@ public class MeterTests {
 
   private static Comparator<Object> sObjectComparator;
   private static Comparator<Method> sMethodComparator;
+  private static Object sThreadBean;
+  private static Method sAllocatedBytes;
 
   /* [ INJECTIONS ] ================================================================================================ */
   @Rule
@@ -116,6 +129,27 @@ public class MeterTests {
 
   //endregion
 
+  /**
+   * Get quantity of bytes allocated by current thread. JVM only, {@link java.lang.management} is not a part of
+   * Android SDK, that is why reflection is used.
+   *
+   * @return allocated bytes, or -1 if not supported.
+   */
+  private static long allocatedBytes() {
+    try {
+      if (null == sAllocatedBytes) {
+        sThreadBean = Class.forName("java.lang.management.ManagementFactory")
+            .getMethod("getThreadMXBean").invoke(null);
+        sAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+            .getMethod("getThreadAllocatedBytes", long.class);
+      }
+
+      return (Long) sAllocatedBytes.invoke(sThreadBean, Thread.currentThread().getId());
+    } catch (final Throwable ignored) {
+      return -1;
+    }
+  }
+
   /* [ TESTS ] ===================================================================================================== */
 
   @Test
@@ -706,6 +740,1257 @@ public class MeterTests {
     assertEquals(Meter.Nanos.COMPARE_EQUAL, resultEquals);
   }
 
+  @Test
+  public void test_16_ManySteps() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+
+    meter.start("→ Many steps"); // #0
+
+    // more steps than one preallocated segment can hold
+    for (int i = 0; i < Sampling.ITERATIONS_L; i++) {
+      meter.beat("step " + i);
+    }
+
+    meter.finish("← Many steps");
+
+    final int totalSteps = Sampling.ITERATIONS_L + 2 /* start + end */;
+    assertTrue("Summary should count all steps", mOutput.toString().contains("steps: " + totalSteps));
+    assertTrue("Last step log expected", mOutput.toString().contains("step " + (Sampling.ITERATIONS_L - 1)));
+  }
+
+  @Test
+  public void test_17_RecapWithoutAllocations() throws Exception {
+    assumeTrue("JVM should support thread allocation tracking", allocatedBytes() >= 0);
+
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+
+    meter.start("→ Recap allocations");
+    meter.loop(EMPTY_LOG);
+
+    // warm up: give JIT a chance to compile recap() and reflection a chance to inflate
+    for (int i = 0; i < Sampling.ITERATIONS_XXL; i++) {
+      meter.recap();
+      allocatedBytes();
+    }
+
+    final long before = allocatedBytes();
+    for (int i = 0; i < Sampling.ITERATIONS_XXL * 10 /* 1M */; i++) {
+      meter.recap();
+    }
+    final long after = allocatedBytes();
+
+    meter.unloop("1M recaps");
+    meter.finish("← Recap allocations");
+
+    // reflection call itself boxes values, that is a few dozens of bytes
+    assertThat("recap() should not allocate", after - before, lessThan(1024L));
+  }
+
+  @Test
+  public void test_18_NestedLoops() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+
+    meter.start("→ Nested loops");
+
+    meter.loop(Sampling.ITERATIONS_S, "outer");
+    for (int i = 0; i < Sampling.ITERATIONS_S; i++) {
+      meter.loop(Sampling.ITERATIONS_M, "inner");
+      for (int j = 0; j < Sampling.ITERATIONS_M; j++) {
+        final Method m = DummyPojo.class.getMethod("getName");
+        meter.recap();
+      }
+      meter.unloop("inner done");
+
+      meter.recap();
+    }
+    meter.unloop("outer done");
+
+    meter.finish("← Nested loops");
+
+    final String[] lines = mOutput.toString().split("\r\n");
+    int inner = 0, outer = 0, nested = 0;
+
+    for (final String line : lines) {
+      if (line.contains("top-")) {
+        continue; // longest steps summary repeats the rows
+      }
+
+      if (line.contains("inner done")) {
+        inner++;
+        assertThat("inner recaps should stay in inner loop", line, containsString("calls:" + Sampling.ITERATIONS_M));
+        assertThat("inner loop should know outer one", line, containsString("iteration #" + (inner - 1) + "]"));
+      } else if (line.contains("outer done")) {
+        outer++;
+        assertThat("outer loop should count own recaps only", line, containsString("calls:" + Sampling.ITERATIONS_S));
+        assertThat("outer loop should show inclusive/exclusive time", line, containsString("incl/excl:"));
+      } else if (line.contains("nested level #1")) {
+        nested++;
+        assertThat(line, containsString("loops:" + Sampling.ITERATIONS_S));
+        assertThat(line, containsString("calls:" + Sampling.ITERATIONS_S * Sampling.ITERATIONS_M));
+      }
+    }
+
+    assertEquals("each outer iteration has own inner loop", Sampling.ITERATIONS_S, inner);
+    assertEquals(1, outer);
+    assertEquals(1, nested);
+  }
+
+  @Test
+  public void test_19_FakeClock() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+
+    // each timestamp moves the clock one millisecond forward
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+
+    meter.start("→ Fake clock"); // #0
+    meter.beat("step 1");
+    meter.beat("step 2");
+    meter.end("← Fake clock");
+    meter.stats(mOutput);
+
+    assertEquals(Meter.Nanos.COMPARE_EQUAL, meter.compare(1, 2));
+    meter.pop();
+
+    assertThat(mOutput.toString(), containsString("1.000 ms | step 1"));
+    assertThat(mOutput.toString(), containsString("final: 3.000 ms"));
+  }
+
+  @Test
+  public void test_20_ThreadCpuClock() throws Exception {
+    final Meter.Clock clock = Meter.Clock.THREAD_CPU;
+    final long start = clock.now();
+
+    assumeTrue("JVM should support thread CPU time", start > 0);
+
+    // burn some CPU
+    long sum = 0;
+    for (int i = 0; i < Sampling.ITERATIONS_XXL; i++) {
+      sum += DummyPojo.class.getMethods().length;
+    }
+
+    assertTrue("CPU time should grow", clock.now() > start);
+    assertTrue(sum > 0);
+  }
+
+  @Test
+  public void test_21_TrackCpuTime() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().TrackCpuTime = true;
+
+    meter.start("→ CPU time");
+
+    Thread.sleep(50);
+    meter.beat("sleeping");
+
+    long sum = 0;
+    meter.loop(Sampling.ITERATIONS_L, "busy loop");
+    for (int i = 0; i < Sampling.ITERATIONS_L; i++) {
+      sum += DummyPojo.class.getMethods().length;
+      meter.recap();
+    }
+    meter.unloop("busy loop done");
+
+    meter.finish("← CPU time");
+
+    assertTrue(sum > 0);
+    assertThat("step rows should contain CPU column", mOutput.toString(), containsString("ms | cpu "));
+    assertThat("loop stats should contain CPU/wall ratio", mOutput.toString(), containsString("cpu/wall: "));
+    assertThat("summary should contain CPU total", mOutput.toString(), containsString(", cpu: "));
+  }
+
+  @Test
+  public void test_22_TrackAllocations() throws Exception {
+    assumeTrue("JVM should support thread allocation tracking", allocatedBytes() >= 0);
+
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().TrackAllocations = true;
+    meter.getConfig().TrackCpuTime = true;
+    meter.getConfig().Percentiles = new double[]{50, 90, 99, 99.9};
+
+    // first execution of the code resolves classes and constants, that is not a step allocation
+    final String loopName = "no allocations";
+    final String unloopName = "no allocations done";
+    meter.start("→ Warm-up");
+    meter.loop(1, loopName);
+    meter.recap();
+    meter.unloop(unloopName);
+    meter.end("← Warm-up");
+    meter.pop();
+
+    meter.start("→ Allocations"); // #0
+
+    // more steps than one storage segment, growth of the storage is not a step allocation
+    for (int i = 0; i < Sampling.ITERATIONS_L; i++) {
+      meter.skip();
+    }
+
+    long sum = 0;
+    final int loop = Sampling.ITERATIONS_L + 1; // start + skips
+    meter.loop(Sampling.ITERATIONS_L, loopName);
+    for (int i = 0; i < Sampling.ITERATIONS_L; i++) {
+      sum += i;
+      meter.recap();
+    }
+    meter.unloop(unloopName);
+
+    final byte[] buffer = new byte[Sampling.ITERATIONS_XL];
+    meter.beat("allocate buffer");
+
+    meter.end("← Allocations");
+    meter.stats(mOutput);
+
+    try {
+      for (int i = 1; i < loop + 2; i++) {
+        meter.assertNoAllocation(i);
+      }
+
+      assertThat(meter.allocated(loop + 2), greaterThanOrEqualTo((long) buffer.length));
+
+      try {
+        meter.assertNoAllocation(loop + 2);
+        fail("Step with allocation should not pass the check");
+      } catch (final AssertionError expected) {
+        assertThat(expected.getMessage(), containsString("allocate buffer"));
+      }
+    } finally {
+      meter.pop();
+    }
+
+    assertTrue(sum > 0);
+    assertThat("loop stats should contain bytes per iteration", mOutput.toString(), containsString("alloc avg/sum: 0/0 B"));
+  }
+
+  @Test
+  public void test_23_TrackGc() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().TrackGc = true;
+    meter.getConfig().ExcludeGcTime = true;
+
+    meter.start("→ GC");
+
+    meter.loop(Sampling.ITERATIONS_S, "forced collections");
+    for (int i = 0; i < Sampling.ITERATIONS_S; i++) {
+      System.gc();
+      meter.recap();
+    }
+    meter.unloop("forced collections done");
+
+    meter.finish("← GC");
+
+    final String output = mOutput.toString();
+    assertThat("loop stats should contain GC overlap", output, containsString(" ms excluded / "));
+    assertThat("step rows should contain GC column", output, containsString("| gc "));
+
+    final Matcher m = Pattern.compile("gc count/pause: (\\d+)/").matcher(output);
+    assertTrue("loop stats should be printed", m.find());
+    assertThat("each iteration forces collection", Long.parseLong(m.group(1)),
+        greaterThanOrEqualTo((long) Sampling.ITERATIONS_S));
+  }
+
+  @Test
+  public void test_24_Histogram() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+
+    // clock moves only by explicit advance, iteration #i takes (i + 1) micros
+    final Meter.FakeClock clock = new Meter.FakeClock(0, 0);
+    meter.getConfig().CustomClock = clock;
+    meter.getConfig().Percentiles = new double[]{50, 90, 99, 99.9};
+
+    meter.start("→ Histogram"); // #0
+    meter.loop("endless loop"); // #1
+    for (int i = 0; i < Sampling.ITERATIONS_XL; i++) {
+      clock.advance((i + 1) * Meter.Nanos.ONE_MICROS);
+      meter.recap();
+    }
+    meter.unloop("endless loop done");
+    meter.end("← Histogram");
+    meter.stats(mOutput);
+
+    final Meter.Histogram histogram = meter.histogram(1);
+    meter.pop();
+
+    // ring buffer keeps only last iterations, histogram keeps all of them
+    assertEquals(Sampling.ITERATIONS_XL, histogram.Count);
+    assertEquals(Meter.Nanos.ONE_MICROS, histogram.Min);
+    assertEquals(Sampling.ITERATIONS_XL * Meter.Nanos.ONE_MICROS, histogram.Max);
+
+    final double error = 1.0 / 16;
+    assertEquals(Sampling.ITERATIONS_XL * 0.5, histogram.percentile(50) / (double) Meter.Nanos.ONE_MICROS,
+        Sampling.ITERATIONS_XL * 0.5 * error);
+    assertEquals(Sampling.ITERATIONS_XL * 0.99, histogram.percentile(99) / (double) Meter.Nanos.ONE_MICROS,
+        Sampling.ITERATIONS_XL * 0.99 * error);
+    assertThat(mOutput.toString(), containsString("p50/p90/p99/p99.9: "));
+
+    // merged histogram of two equal runs has the same percentiles
+    final long p90 = histogram.percentile(90);
+    final Meter.Histogram merged = new Meter.Histogram().merge(histogram).merge(histogram);
+    assertEquals(2L * Sampling.ITERATIONS_XL, merged.Count);
+    assertEquals(p90, merged.percentile(90));
+  }
+
+  @Test
+  public void test_25_RobustStatistics() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+
+    final Meter.FakeClock clock = new Meter.FakeClock(0, 0);
+    meter.getConfig().CustomClock = clock;
+
+    meter.start("→ Robust"); // #0
+    meter.loop(Sampling.ITERATIONS_M, "cluster of outliers"); // #1
+    for (int i = 0; i < Sampling.ITERATIONS_M; i++) {
+      // each tenth iteration simulates JIT compilation pause
+      final boolean isPause = (i % Sampling.ITERATIONS_S == 0);
+      clock.advance(isPause ? 50 * Meter.Nanos.ONE_MILLIS : Meter.Nanos.ONE_MILLIS + (i % 5) * Meter.Nanos.ONE_MICROS);
+      meter.recap();
+    }
+    meter.unloop("cluster of outliers done");
+    meter.end("← Robust");
+    meter.stats(mOutput);
+
+    final Meter.Robust tukey = meter.robust(1);
+
+    meter.getConfig().OutliersRule = Meter.OUTLIERS_Z_SCORE;
+    meter.getConfig().OutliersThreshold = 3.5;
+    final Meter.Robust zScore = meter.robust(1);
+    meter.pop();
+
+    final int pauses = Sampling.ITERATIONS_M / Sampling.ITERATIONS_S;
+    assertEquals(Sampling.ITERATIONS_M, tukey.Count);
+    assertEquals(Meter.Nanos.ONE_MILLIS + 2 * Meter.Nanos.ONE_MICROS, tukey.Median, Meter.Nanos.ONE_MICROS);
+    assertEquals(pauses, tukey.Outliers);
+    assertEquals(pauses, zScore.Outliers);
+    assertEquals(Meter.Nanos.ONE_MILLIS + 2 * Meter.Nanos.ONE_MICROS, tukey.Mean, Meter.Nanos.ONE_MICROS);
+
+    assertThat(mOutput.toString(), containsString("outliers: " + pauses + " - mean w/o outliers: 1.002 ms"));
+  }
+
+  @Test
+  public void test_26_StatisticalCompare() throws Exception {
+    // well known t-distribution quantiles
+    assertEquals(1.960, Meter.Comparison.studentQuantile(0.975, Double.POSITIVE_INFINITY), 0.001);
+    assertEquals(2.228, Meter.Comparison.studentQuantile(0.975, 10), 0.005);
+    assertEquals(2.042, Meter.Comparison.studentQuantile(0.975, 30), 0.002);
+
+    // candidate is 10% slower, noise is +/- 5%
+    final Random rnd = new Random(42);
+    final long[] baseline = new long[Sampling.ITERATIONS_M];
+    final long[] candidate = new long[Sampling.ITERATIONS_M];
+    final long[] same = new long[Sampling.ITERATIONS_M];
+    for (int i = 0; i < Sampling.ITERATIONS_M; i++) {
+      baseline[i] = Meter.Nanos.ONE_MILLIS + (long) (rnd.nextGaussian() * 50 * Meter.Nanos.ONE_MICROS);
+      candidate[i] = 11 * Meter.Nanos.ONE_MILLIS / 10 + (long) (rnd.nextGaussian() * 50 * Meter.Nanos.ONE_MICROS);
+      same[i] = Meter.Nanos.ONE_MILLIS + (long) (rnd.nextGaussian() * 50 * Meter.Nanos.ONE_MICROS);
+    }
+
+    final Meter.Comparison slower = Meter.compare(baseline, candidate, 0.95);
+    assertTrue(slower.IsSignificant);
+    assertEquals(Meter.Nanos.COMPARE_LESS, slower.Verdict);
+    assertEquals(1.1, slower.Ratio, 0.02);
+    assertTrue("5% regression should be detected: " + slower, slower.isSlowerBy(0.05));
+    assertFalse(slower.isSlowerBy(0.2));
+
+    final Meter.Comparison equal = Meter.compare(baseline, same, 0.95);
+    assertFalse("same distribution: " + equal, equal.IsSignificant);
+    assertEquals(Meter.Nanos.COMPARE_EQUAL, equal.Verdict);
+    assertThat(equal.Low, lessThan(0.0));
+    assertThat(equal.High, greaterThan(0.0));
+
+    // loop iterations comparison
+    final Meter meter = Meter.getInstance();
+    final Meter.FakeClock clock = new Meter.FakeClock(0, 0);
+    meter.getConfig().CustomClock = clock;
+
+    meter.start("→ Compare"); // #0
+    meter.loop(baseline.length, "baseline"); // #1
+    for (final long iteration : baseline) {
+      clock.advance(iteration);
+      meter.recap();
+    }
+    meter.unloop("baseline done"); // #2
+    meter.loop(candidate.length, "candidate"); // #3
+    for (final long iteration : candidate) {
+      clock.advance(iteration);
+      meter.recap();
+    }
+    meter.unloop("candidate done"); // #4
+    meter.end("← Compare");
+
+    try {
+      final Meter.Comparison loops = meter.compareLoops(1, 3, 0.95);
+      assertEquals(slower.Low, loops.Low, 1);
+      assertEquals(slower.High, loops.High, 1);
+      assertTrue(loops.isSlowerBy(0.05));
+    } finally {
+      meter.pop();
+    }
+  }
+
+  @Test
+  public void test_27_ColumnarReport() throws Exception {
+    final Meter meter = Meter.getInstance();
+    final Meter.FakeClock clock = new Meter.FakeClock(0, Meter.Nanos.ONE_MICROS);
+    meter.getConfig().CustomClock = clock;
+
+    meter.start("→ Report"); // #0
+    for (int i = 1; i < Sampling.ITERATIONS_XL; i++) {
+      // every hundredth step is the longest
+      clock.advance((i % Sampling.ITERATIONS_M == 0) ? Meter.Nanos.ONE_MILLIS : 0);
+      meter.beat("step #" + i);
+    }
+    meter.end("← Report");
+
+    final int[] rows = new int[1];
+    final Meter.Output counter = new Meter.Output() {
+      @Override
+      public void log(final Level level, final String tag, final String msg) {
+        if (msg.startsWith("| ")) {
+          rows[0]++;
+        }
+      }
+    };
+
+    meter.stats(counter);
+    meter.stats(mOutput);
+
+    try {
+      assertEquals(Sampling.ITERATIONS_XL + 1, rows[0]);
+      assertThat(mOutput.toString(), containsString("top-5: |  0.92% |    1.001 ms | step #500"));
+
+      // repeated reports do not influence comparison
+      assertEquals(Meter.Nanos.COMPARE_EQUAL, meter.compare(Sampling.ITERATIONS_M, 2 * Sampling.ITERATIONS_M));
+      assertEquals(Meter.Nanos.COMPARE_GREATER, meter.compare(Sampling.ITERATIONS_M, 1));
+    } finally {
+      meter.pop();
+    }
+  }
+
+  @Test
+  public void test_28_LongestOnline() throws Exception {
+    final Meter meter = Meter.getInstance();
+    final Meter.FakeClock clock = new Meter.FakeClock(0, 0);
+    meter.getConfig().CustomClock = clock;
+    meter.getConfig().ShowTopNLongest = 3;
+
+    meter.start("→ Longest"); // #0
+    for (int i = 1; i <= Sampling.ITERATIONS_M; i++) {
+      clock.advance(i * Meter.Nanos.ONE_MICROS);
+      meter.beat("step"); // #1..#100, the last is the longest
+    }
+
+    clock.advance(Meter.Nanos.ONE_SECOND);
+    meter.skip("skipped steps are not selected"); // #101
+
+    meter.loop(Sampling.ITERATIONS_S, "loop"); // #102
+    for (int i = 0; i < Sampling.ITERATIONS_S; i++) {
+      clock.advance((i == 7 ? 2 : 1) * Meter.Nanos.ONE_MILLIS);
+      meter.recap();
+    }
+    meter.unloop("loop done");
+
+    // available at any time, without statistics pass
+    final Meter.Longest longest = meter.longest();
+    meter.end("← Longest");
+    meter.pop();
+
+    assertArrayEquals(new int[]{103, 100, 99}, longest.Steps);
+    assertEquals(Sampling.ITERATIONS_S * Meter.Nanos.ONE_MILLIS + Meter.Nanos.ONE_MILLIS, longest.StepTimes[0]);
+
+    assertArrayEquals(new int[]{102, 102, 102}, longest.Loops);
+    assertArrayEquals(new int[]{7, 0, 1}, longest.Iterations);
+    assertEquals(2 * Meter.Nanos.ONE_MILLIS, longest.IterationTimes[0]);
+  }
+
+  @Test
+  public void test_29_ReportSnapshot() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+    meter.getConfig().Percentiles = new double[]{50};
+
+    meter.start("→ Report"); // #0
+    meter.beat("first"); // #1
+    meter.skip("skipped"); // #2
+    meter.loop(Sampling.ITERATIONS_S, "loop"); // #3
+    for (int i = 0; i < Sampling.ITERATIONS_S; i++) {
+      meter.recap();
+    }
+    meter.unloop("loop done"); // #4
+    meter.end("← Report"); // #5
+
+    final Meter.Report report;
+    try {
+      meter.stats(mOutput);
+      meter.stats(mOutput);
+
+      report = meter.report();
+      assertSame("snapshot is calculated once", report, meter.report());
+      assertEquals(Meter.Nanos.COMPARE_EQUAL, meter.compare(1, 2));
+
+      // output configuration change produces a new snapshot
+      meter.getConfig().ShowStepCostPercents = false;
+      assertNotSame(report, meter.report());
+    } finally {
+      meter.pop();
+    }
+
+    // snapshot is immutable and can be queried from any thread after the measure is gone
+    final Object[] result = new Object[4];
+    final Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        result[0] = report.indexOf("skipped");
+        result[1] = report.time(1);
+        result[2] = report.percentile(3, 50);
+        result[3] = report.robust(3).Median;
+      }
+    });
+    reader.start();
+    reader.join();
+
+    assertEquals(6, report.Count);
+    assertEquals(2, result[0]);
+    assertEquals(Meter.Nanos.ONE_MILLIS, result[1]);
+    assertEquals(Meter.Nanos.ONE_MILLIS, result[2]);
+    assertEquals((double) Meter.Nanos.ONE_MILLIS, result[3]);
+    assertTrue(report.isSkipped(2));
+    assertEquals(Meter.Nanos.ONE_MILLIS, report.Skipped);
+    assertEquals(5 * Meter.Nanos.ONE_MILLIS + Sampling.ITERATIONS_S * Meter.Nanos.ONE_MILLIS, report.Total);
+    assertArrayEquals(new int[]{3}, report.loops());
+    assertEquals(Sampling.ITERATIONS_S, report.samples(3).length);
+    assertEquals("first", report.label(1));
+    assertThat(report.row(1), containsString("1.000 ms | first"));
+  }
+
+  @Test
+  public void test_30_AsyncReporting() throws Exception {
+    final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+    final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+    final Meter.Output output = new Meter.Output() {
+      @Override
+      public void log(final Level level, final String tag, final String msg) {
+        lines.add(msg);
+        threads.add(Thread.currentThread().getName());
+      }
+    };
+
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(output);
+    meter.getConfig().AsyncReporting = true;
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+
+    meter.start("→ Async");
+    meter.beat("first");
+    meter.loop(Sampling.ITERATIONS_S, "loop");
+    for (int i = 0; i < Sampling.ITERATIONS_S; i++) {
+      meter.recap();
+    }
+    meter.unloop("loop done");
+    meter.finish("← Async");
+
+    // configuration changes after hand-off do not affect the pending report
+    meter.getConfig().ShowLogMessage = false;
+
+    assertTrue("report printed in time", Meter.flush(TimeUnit.SECONDS.toMillis(10)));
+    assertFalse(threads.contains(Thread.currentThread().getName()));
+    assertThat(lines.toString(), containsString("1.000 ms | first"));
+    assertThat(lines.toString(), containsString("final: "));
+  }
+
+  @Test
+  public void test_31_SequenceOutput() throws Exception {
+    final List<String> strings = new ArrayList<>();
+    final List<String> sequences = new ArrayList<>();
+    final Meter.SequenceOutput output = new Meter.SequenceOutput() {
+      @Override
+      public void log(final Level level, final String tag, final CharSequence msg) {
+        sequences.add(msg.toString());
+      }
+
+      @Override
+      public void log(final Level level, final String tag, final String msg) {
+        strings.add(msg);
+      }
+    };
+
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(output);
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+    meter.getConfig().ShowAccumulatedTime = true;
+
+    meter.start("→ Sequence"); // #0
+    meter.beat("first"); // #1
+    meter.skip("skipped"); // #2
+    meter.end("← Sequence"); // #3
+
+    try {
+      meter.stats();
+    } finally {
+      meter.pop();
+    }
+
+    // fixed precision columns are right aligned, same as String.format
+    assertThat(strings, hasItem("| 33.33% |    1.000 ms |    1.000 ms | first"));
+    assertThat(strings, hasItem("| 33.33% |    1.000 ms |    2.000 ms | skipped"));
+    assertThat(sequences, hasItem("final: 2.000 ms (-1.000 ms), steps: 4"));
+    assertThat(sequences, hasItem("top-1: | 33.33% |    1.000 ms |    1.000 ms | first"));
+
+    final Meter.Calibrate timing = meter.calibrate();
+    assertTrue(timing.toString(), timing.toString().matches("Calibrate \\[.+\\]: (-?\\d+\\.\\d{3}/){8}-?\\d+\\.\\d{3} ms"));
+  }
+
+  @Test
+  public void test_32_FilteredOutput() throws Exception {
+    final List<Level> levels = new ArrayList<>();
+    final List<String> lines = new ArrayList<>();
+    final Meter.FilteredOutput output = new Meter.FilteredOutput() {
+      @Override
+      public boolean isLoggable(final Level level) {
+        return Level.INFO == level;
+      }
+
+      @Override
+      public void log(final Level level, final String tag, final String msg) {
+        levels.add(level);
+        lines.add(msg);
+      }
+    };
+
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(output);
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+
+    meter.start("→ Filtered");
+    meter.beat("first");
+    meter.skip("skipped");
+    meter.loop(Sampling.ITERATIONS_S, "outer");
+    for (int i = 0; i < Sampling.ITERATIONS_S; i++) {
+      meter.loop(2, "inner");
+      meter.recap();
+      meter.recap();
+      meter.unloop("inner done");
+      meter.recap();
+    }
+    meter.unloop("outer done");
+
+    final Meter.Report report;
+    try {
+      meter.end("← Filtered");
+      meter.stats();
+      report = meter.report();
+    } finally {
+      meter.pop();
+    }
+
+    // only summary and longest steps are printed, skipped step (WARNING) and rows (FINEST) are not formatted
+    assertThat(levels, everyItem(is(Level.INFO)));
+    assertThat(lines.get(0), startsWith("final: "));
+    assertThat(lines.get(1), startsWith("top-1: "));
+
+    // suppressed rows are still available on demand
+    assertThat(report.row(1), containsString("first"));
+    assertNotNull(report.nested(report.indexOf("outer done")));
+  }
+
+  @Test
+  public void test_33_Export() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+
+    // thread meter may be calibrated by previous tests, calibrate it here so exported records are always the same
+    meter.calibrate();
+
+    final StringWriter json = new StringWriter();
+    final StringWriter csv = new StringWriter();
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+    meter.start("→ Export"); // #0
+    meter.beat("say \"hi\", then go"); // #1
+    meter.skip("skipped"); // #2
+    meter.loop(2, "loop"); // #3
+    meter.recap();
+    meter.recap();
+    meter.unloop("loop done"); // #4
+    meter.end("← Export"); // #5
+
+    try {
+      meter.export(json, Meter.EXPORT_JSON_LINES);
+      meter.export(csv, Meter.EXPORT_CSV);
+      meter.export(stream, Meter.EXPORT_JSON_LINES);
+    } finally {
+      meter.pop();
+    }
+
+    final String[] records = json.toString().split("\n");
+    // measure, 6 steps, 1 loop, 9 calibrated operations
+    assertThat(records.length, is(8 + 9));
+    assertThat(records[0], startsWith("{\"type\":\"measure\","));
+    assertThat(records[2], containsString("\"index\":1,"));
+    assertThat(records[2], containsString("\"cost\":" + Meter.Nanos.ONE_MILLIS + ","));
+    assertThat(records[2], containsString("\"label\":\"say \\\"hi\\\", then go\"}"));
+    assertThat(records[3], containsString("\"skipped\":true"));
+    assertThat(records[7], startsWith("{\"type\":\"loop\","));
+    assertThat(records[7], containsString("\"calls\":2,"));
+    assertThat(records[8], startsWith("{\"type\":\"calibrate\","));
+    assertThat(records[16], containsString("\"label\":\"pop\""));
+    assertEquals(json.toString(), stream.toString("UTF-8"));
+
+    final String[] rows = csv.toString().split("\n");
+    assertEquals(records.length + 1, rows.length);
+    assertThat(rows[0], startsWith("type,measure,index,flags,start,cost,accumulated,skipped,label"));
+    assertThat(rows[3], endsWith(",false,\"say \"\"hi\"\", then go\",,,,,,"));
+    assertEquals(rows[0].split(",").length, rows[8].split(",", -1).length);
+  }
+
+  @Test
+  public void test_34_ChromeTrace() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+
+    final StringWriter trace = new StringWriter();
+
+    meter.start("→ Outer");
+    meter.beat("outer step");
+    meter.start("→ Inner");
+    meter.loop(Sampling.ITERATIONS_S, "outer loop");
+    for (int i = 0; i < Sampling.ITERATIONS_S; i++) {
+      meter.loop(2, "inner loop");
+      meter.recap();
+      meter.recap();
+      meter.unloop("inner loop done");
+      meter.recap();
+    }
+    meter.unloop("outer loop done");
+    meter.end("← Inner");
+
+    try {
+      meter.export(trace, Meter.EXPORT_CHROME_TRACE);
+    } finally {
+      meter.pop();
+      meter.pop();
+    }
+
+    final String json = trace.toString();
+    assertThat(json, startsWith("{\"traceEvents\":["));
+    assertThat(json, endsWith("],\"displayTimeUnit\":\"ns\"}\n"));
+    assertThat(json, containsString("\"name\":\"outer step\",\"cat\":\"step\",\"ph\":\"X\""));
+
+    // every async slice is closed: loops and iterations
+    final int loops = 1 + Sampling.ITERATIONS_S;
+    final int iterations = Sampling.ITERATIONS_S + Sampling.ITERATIONS_S * 2;
+    assertEquals(loops + iterations, count(json, "\"ph\":\"b\""));
+    assertEquals(loops + iterations, count(json, "\"ph\":\"e\""));
+
+    // not finished outer measure covers the nested one
+    final Matcher outer = Pattern.compile("\"name\":\"→ Outer\".*?\"ts\":([0-9.]+),\"dur\":([0-9.]+)").matcher(json);
+    final Matcher inner = Pattern.compile("\"name\":\"→ Inner\".*?\"ts\":([0-9.]+),\"dur\":([0-9.]+)").matcher(json);
+    assertTrue(outer.find());
+    assertTrue(inner.find());
+    assertEquals(Double.parseDouble(outer.group(1)) + Double.parseDouble(outer.group(2)),
+        Double.parseDouble(inner.group(1)) + Double.parseDouble(inner.group(2)), 0.001);
+  }
+
+  @Test
+  public void test_35_Listener() throws Exception {
+    final List<String> events = new ArrayList<>();
+    final Meter.Listener listener = new Meter.Listener() {
+      @Override
+      public void onStep(final int measure, final int index, final long flags, final long timestamp) {
+        events.add("step " + index + ((flags & Meter.Bits.LOOP) == Meter.Bits.LOOP ? " loop" : "")
+            + ((flags & Meter.Bits.END) == Meter.Bits.END ? " end" : "") + " @" + timestamp);
+      }
+
+      @Override
+      public void onIteration(final int measure, final int loop, final int iteration, final long timestamp) {
+        events.add("iteration " + loop + "/" + iteration + " @" + timestamp);
+      }
+
+      @Override
+      public void onLog(final int measure, final int index, final String log) {
+        events.add("log " + index + " " + log);
+      }
+
+      @Override
+      public void onPop(final int measure) {
+        events.add("pop");
+      }
+    };
+
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+    meter.getConfig().CustomListener = listener;
+
+    meter.start("→ Listener");
+    meter.loop(2, "loop");
+    meter.recap();
+    meter.recap();
+    meter.unloop();
+    meter.end();
+    meter.pop();
+
+    final long ms = Meter.Nanos.ONE_MILLIS;
+    assertEquals(Arrays.asList("step 0 @0", "log 0 → Listener", "step 1 loop @" + ms, "log 1 loop",
+        "iteration 1/0 @" + 2 * ms, "iteration 1/1 @" + 3 * ms, "step 2 @" + 4 * ms, "step 3 end @" + 5 * ms, "pop"),
+        events);
+  }
+
+  @Test
+  public void test_36_Journal() throws Exception {
+    final File file = File.createTempFile("meter", ".journal");
+    final Meter.Journal journal = new Meter.Journal(file);
+
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+    meter.getConfig().CustomListener = journal;
+
+    meter.start("→ Journal outer");
+    meter.beat("prepare");
+    meter.start("→ Journal inner");
+    meter.loop(3, "loop");
+    meter.recap();
+    meter.recap();
+    meter.recap();
+    meter.unloop("unloop");
+    meter.skip("skipped");
+    meter.end("done");
+    final Meter.Report inner = meter.report();
+    meter.pop();
+    meter.beat("after");
+    final Meter.Report outer = meter.report();
+
+    // outer measure is not popped: simulated crash
+    journal.close();
+
+    final List<Meter.Report> reports = Meter.Journal.replay(file);
+    assertThat(reports.size(), is(2));
+
+    for (int i = 0; i < reports.size(); i++) {
+      final Meter.Report expected = (0 == i) ? inner : outer;
+      final Meter.Report actual = reports.get(i);
+
+      assertEquals(expected.Count, actual.Count);
+      assertEquals(expected.Total, actual.Total);
+      assertEquals(expected.Skipped, actual.Skipped);
+
+      for (int step = 0; step < expected.Count; step++) {
+        assertEquals(expected.label(step), actual.label(step));
+        assertEquals(expected.time(step), actual.time(step));
+      }
+    }
+
+    assertThat(reports.get(0).indexOf("loop"), greaterThan(0));
+    assertThat(reports.get(1).indexOf("after"), greaterThan(0));
+
+    meter.pop();
+    assertTrue(file.delete());
+    assertTrue(new File(file.getPath() + ".labels").delete());
+  }
+
+  @Test
+  public void test_37_Baseline() throws Exception {
+    final File directory = new File(System.getProperty("java.io.tmpdir"), "meter-baseline-" + System.nanoTime());
+    final Meter.Baseline baseline = new Meter.Baseline(directory);
+    final String name = "LoginFill/" + mTestName.getMethodName();
+
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+
+    // first run creates baseline
+    assertFalse(baseline.exists(name));
+    measure(meter, 10, 1000);
+    meter.assertNoRegression(baseline, name);
+    meter.pop();
+    assertTrue(baseline.exists(name));
+
+    // same timing and 5% slower timing are within tolerance
+    measure(meter, 10, 1000);
+    meter.assertNoRegression(baseline, name);
+    meter.pop();
+
+    measure(meter, 10.5, 1050);
+    meter.assertNoRegression(baseline, name);
+    meter.pop();
+
+    // 50% slower step and loop
+    measure(meter, 15, 1500);
+    final Meter.Report slower = meter.report();
+    final List<Meter.Regression> regressions = baseline.compare(name, slower, meter.getConfig());
+    assertThat(regressions.size(), is(3));
+    assertThat(regressions.get(0).Key, equalTo("work"));
+    assertFalse(regressions.get(0).IsLoop);
+    assertThat(regressions.get(1).Key, equalTo("unloop"));
+    assertFalse(regressions.get(1).IsLoop);
+    assertThat(regressions.get(2).Key, equalTo("loop"));
+    assertTrue(regressions.get(2).IsLoop);
+    assertEquals(0.5, regressions.get(2).change(), 0.001);
+
+    try {
+      meter.assertNoRegression(baseline, name);
+      fail("Expected regression.");
+    } catch (final AssertionError ex) {
+      mOutput.log(Level.INFO, "baseline", ex.getMessage());
+      assertThat(ex.getMessage(), containsString("'work'"));
+    }
+
+    // accepted slower run becomes the new baseline
+    baseline.accept(name, slower);
+    meter.assertNoRegression(baseline, name);
+    meter.pop();
+
+    assertTrue(baseline.fileOf(name).delete());
+    assertTrue(directory.delete());
+  }
+
+  /**
+   * Track measure with "work" step and "loop" of 20 iterations.
+   *
+   * @param meter the meter.
+   * @param work time of the work step in millis.
+   * @param iteration time of the iteration in micros.
+   */
+  private static void measure(final Meter meter, final double work, final long iteration) {
+    final Meter.FakeClock clock = new Meter.FakeClock();
+    meter.getConfig().CustomClock = clock;
+
+    meter.start("→ Baseline");
+    clock.advance((long) (work * Meter.Nanos.ONE_MILLIS));
+    meter.beat("work");
+    meter.loop(20, "loop");
+
+    for (int i = 0; i < 20; i++) {
+      clock.advance(iteration * Meter.Nanos.ONE_MICROS);
+      meter.recap();
+    }
+
+    meter.unloop("unloop");
+    meter.end("done");
+  }
+
+  @Test
+  public void test_38_SteadyLoop() throws Exception {
+    final List<String> lines = new ArrayList<>();
+    final Meter.FakeClock clock = new Meter.FakeClock();
+    final long ms = Meter.Nanos.ONE_MILLIS;
+
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(new Meter.Output() {
+      @Override
+      public void log(final Level level, final String tag, final String msg) {
+        mOutput.log(level, tag, msg);
+        lines.add(msg);
+      }
+    });
+    meter.getConfig().CustomClock = clock;
+    meter.getConfig().WarmUpWindow = 5;
+    meter.getConfig().WarmUpThreshold = 0.05;
+
+    // iterations time: 10, 8, 6, 4, 2, then stable 1 ms
+    meter.start("→ Steady");
+    meter.loopSteady(20, "steady");
+    int iterations = 0;
+    while (meter.isIterating()) {
+      clock.advance(Math.max(1, 10 - 2 * iterations++) * ms);
+      meter.recap();
+    }
+    meter.unloop("unloop");
+    meter.end("done");
+
+    assertThat(iterations, is(10 + 20));
+
+    final Meter.Report report = meter.report();
+    final int warmUp = report.indexOf(Meter.WARM_UP);
+    final int loop = report.indexOf("steady");
+    assertThat(warmUp, is(loop + 1));
+    assertTrue(report.isSkipped(warmUp));
+    assertThat(report.time(warmUp), is((10 + 8 + 6 + 4 + 2 + 5) * ms));
+    assertThat(report.time(report.indexOf("unloop")), is(20 * ms));
+
+    assertThat(report.warmUp(loop).length, is(10));
+    assertThat(report.warmUp(loop)[0], is(10 * ms));
+    assertThat(report.samples(loop).length, is(20));
+    assertThat(report.robust(loop).Median, is((double) ms));
+
+    meter.stats();
+    assertThat(lines.toString(), containsString("warm-up: 10 steady cv:0.0% - curve: "));
+    meter.pop();
+
+    // noisy iterations never reach steady state, budget limits warm up
+    meter.getConfig().WarmUpBudget = 15;
+    meter.start("→ Budget");
+    meter.loopSteady(10, "noisy");
+    iterations = 0;
+    while (meter.isIterating()) {
+      clock.advance((1 + 2 * (iterations++ % 2)) * ms);
+      meter.recap();
+    }
+    meter.unloop("unloop");
+    meter.end("done");
+
+    assertThat(iterations, is(15 + 10));
+    assertThat(meter.report().warmUp(meter.report().indexOf("noisy")).length, is(15));
+    meter.stats();
+    assertThat(lines.toString(), containsString("warm-up: 15 budget"));
+    meter.pop();
+  }
+
+  @Test
+  public void test_39_ReportInvalidation() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+
+    meter.start("→ Invalidation");
+    try {
+      meter.loop("L");
+      meter.recap();
+      meter.recap();
+
+      final Meter.Report first = meter.report();
+      assertThat(first.samples(1).length, is(2));
+
+      // iterations do not add steps, but change the snapshot
+      for (int i = 0; i < 10; i++) {
+        meter.recap();
+      }
+      final Meter.Report second = meter.report();
+      assertNotSame(first, second);
+      assertThat(second.samples(1).length, is(12));
+      meter.unloop();
+
+      // log message of the last step changes the snapshot
+      meter.beat("b");
+      assertThat(meter.report().label(3), equalTo("b"));
+      meter.log("renamed");
+      assertThat(meter.report().label(3), equalTo("renamed"));
+    } finally {
+      meter.pop();
+    }
+  }
+
+  @Test
+  public void test_40_AsyncReportingFailure() throws Exception {
+    final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+    final Meter meter = Meter.getInstance();
+    meter.getConfig().AsyncReporting = true;
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+
+    // error thrown by output does not stop reporter
+    meter.setOutput(new Meter.Output() {
+      @Override
+      public void log(final Level level, final String tag, final String msg) {
+        throw new AssertionError("broken output");
+      }
+    });
+    meter.start("→ Broken");
+    meter.finish("← Broken");
+    assertTrue("failed report is not pending", Meter.flush(TimeUnit.SECONDS.toMillis(10)));
+
+    meter.setOutput(new Meter.Output() {
+      @Override
+      public void log(final Level level, final String tag, final String msg) {
+        lines.add(msg);
+      }
+    });
+    meter.start("→ Working");
+    meter.finish("← Working");
+    assertTrue("report printed in time", Meter.flush(TimeUnit.SECONDS.toMillis(10)));
+    assertThat(lines.toString(), containsString("← Working"));
+  }
+
+  @Test
+  public void test_41_SteadyLoopBody() throws Exception {
+    final Meter.FakeClock clock = new Meter.FakeClock();
+    final long ms = Meter.Nanos.ONE_MILLIS;
+
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().CustomClock = clock;
+    meter.getConfig().WarmUpWindow = 5;
+
+    // each iteration is 100 ms: step, nested loop of two iterations, tail
+    meter.start("→ Steady body");
+    meter.loopSteady(3, "steady");
+    int iterations = 0;
+    while (meter.isIterating()) {
+      iterations++;
+      clock.advance(60 * ms);
+      meter.beat("inner");
+      meter.loop(2, "nested");
+      clock.advance(10 * ms);
+      meter.recap();
+      clock.advance(10 * ms);
+      meter.recap();
+      meter.unloop("nested done");
+      clock.advance(20 * ms);
+      meter.recap();
+    }
+    meter.unloop("unloop");
+    meter.end("done");
+
+    try {
+      assertThat(iterations, is(5 + 3));
+
+      final Meter.Report report = meter.report();
+      assertThat(report.Total, is(800 * ms));
+      assertThat(report.Skipped, is(500 * ms));
+
+      // outer loop and nested loops of measured iterations only
+      assertThat(report.loops().length, is(1 + 3));
+      assertThat(report.samples(report.indexOf("steady")).length, is(3));
+      assertThat(report.robust(report.indexOf("steady")).Median, is(100.0 * ms));
+
+      final int warmUp = report.indexOf(Meter.WARM_UP);
+      for (int i = 0; i < report.Count; i++) {
+        assertThat("step #" + i, report.isSkipped(i), is(i > 1 && i <= warmUp));
+      }
+    } finally {
+      meter.stats();
+      meter.pop();
+    }
+  }
+
+  @Test
+  public void test_42_JournalChunks() throws Exception {
+    final File file = File.createTempFile("meter", ".journal");
+    final Meter.Journal journal = new Meter.Journal(file);
+
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MICROS);
+    meter.getConfig().CustomListener = journal;
+
+    // records: 32 bytes each, more than one 1 MiB chunk of iterations
+    final int iterations = 40000;
+    // labels: 4 + 2 * 200 bytes each, more than one 1 MiB chunk of unique labels
+    final int steps = 3000;
+    final char[] padding = new char[190];
+    Arrays.fill(padding, '.');
+
+    meter.start("→ Journal chunks");
+    meter.loop(iterations, "loop");
+    for (int i = 0; i < iterations; i++) {
+      meter.recap();
+    }
+    meter.unloop("unloop");
+    for (int i = 0; i < steps; i++) {
+      meter.beat(String.format(Locale.US, "%010d", i) + new String(padding));
+    }
+    final Meter.Report expected = meter.report();
+
+    // journal is not closed: simulated crash, mapped data is visible to reader
+    try {
+      final List<Meter.Report> reports = Meter.Journal.replay(file);
+      assertThat(reports.size(), is(1));
+
+      final Meter.Report actual = reports.get(0);
+      assertEquals(expected.Count, actual.Count);
+      assertEquals(expected.Total, actual.Total);
+      assertEquals(iterations, actual.samples(actual.indexOf("loop")).length);
+
+      for (int step = 0; step < expected.Count; step++) {
+        assertEquals(expected.label(step), actual.label(step));
+        assertEquals(expected.time(step), actual.time(step));
+      }
+    } finally {
+      meter.pop();
+      journal.close();
+    }
+
+    assertTrue(file.length() > 1024 * 1024);
+    assertTrue(new File(file.getPath() + ".labels").length() > 1024 * 1024);
+    assertTrue(file.delete());
+    assertTrue(new File(file.getPath() + ".labels").delete());
+  }
+
+  @Test
+  public void test_43_ComparisonZeroBaseline() throws Exception {
+    final long[] zero = {0, 0, 0, 0};
+
+    // any significant time against zero baseline is infinitely slower
+    final Meter.Comparison slower = Meter.compare(zero, new long[]{10, 11, 12, 11}, 0.95);
+    assertEquals(Double.POSITIVE_INFINITY, slower.ratioLow(), 0);
+    assertTrue(slower.isSlowerBy(0.05));
+    assertFalse(slower.isFasterBy(0.05));
+
+    // zero against zero is no change
+    final Meter.Comparison same = Meter.compare(zero, zero, 0.95);
+    assertEquals(1.0, same.ratioLow(), 0);
+    assertEquals(1.0, same.ratioHigh(), 0);
+    assertFalse(same.isSlowerBy(0.05));
+    assertFalse(same.isFasterBy(0.05));
+    assertThat(same.toString(), not(containsString("Infinity")));
+  }
+
+  @Test
+  public void test_44_ReportIsolation() throws Exception {
+    final Meter meter = Meter.getInstance();
+    meter.setOutput(mOutput);
+    meter.getConfig().CustomClock = new Meter.FakeClock(0, Meter.Nanos.ONE_MILLIS);
+
+    meter.start("→ Isolation"); // #0
+    meter.loop(2, "loop"); // #1
+    meter.recap();
+    meter.recap();
+    meter.unloop("loop done"); // #2
+    meter.beat("original"); // #3
+
+    final Meter.Report report = meter.report();
+
+    try {
+      // measure keeps recording after snapshot, rows of the snapshot are not rendered yet
+      meter.log("renamed");
+      meter.beat("after");
+
+      final String[] rows = new String[report.Count];
+      final Thread reader = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < rows.length; i++) {
+            rows[i] = report.row(i);
+          }
+        }
+      });
+      reader.start();
+      reader.join();
+
+      assertEquals(4, report.Count);
+      assertEquals("original", report.label(3));
+      assertThat(rows[3], endsWith("original"));
+      assertThat(rows[3], not(containsString("renamed")));
+      assertThat(rows[2], endsWith("loop done"));
+      assertEquals(rows[3], report.row(3));
+
+      assertThat(meter.report().row(3), endsWith("renamed"));
+    } finally {
+      meter.pop();
+    }
+  }
+
+  /**
+   * Count occurrences of the text.
+   */
+  private static int count(final String text, final String what) {
+    int count = 0;
+
+    for (int i = text.indexOf(what); i >= 0; i = text.indexOf(what, i + 1)) {
+      count++;
+    }
+
+    return count;
+  }
+
   /* [ NESTED DECLARATIONS ] ======================================================================================= */
 
   public class DummyPojo {